@@ -0,0 +1,63 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The entry point of the JMH benchmarks jar. Takes the same arguments as
+ * JMH's own runner, but writes the results as JSON to jmh-result.json unless
+ * a result format or file is given, so that runs can be compared over time.
+ * <p>
+ * Usage: java -jar target/benchmarks.jar [JMH options]
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+public class BenchmarkRunner {
+    /**
+     * The file the results are written to by default.
+     */
+    private static final String RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        CommandLineOptions options;
+        try {
+            options = new CommandLineOptions(args);
+        } catch (CommandLineOptionException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        if (options.shouldHelp()) {
+            options.showHelp();
+            return;
+        }
+
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+        if (!options.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (!options.getResult().hasValue()) {
+            builder.result(RESULT_FILE);
+        }
+
+        Runner runner = new Runner(builder.build());
+        if (options.shouldList()) {
+            runner.list();
+        } else {
+            runner.run();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the Board operations the search spends its time in, run
+ * on each of the benchmark positions and reported in operations per second.
+ * The forks add the Vector API module, so the batch evaluations take their
+ * vector path; -jvmArgsAppend -Dpentago.vector=false measures the scalar one.
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class BoardBenchmark {
+    /**
+     * The name of the position benchmarked.
+     */
+    @Param({"opening", "midgame", "near-terminal"})
+    public String position;
+
+    /**
+     * The position benchmarked, with black on-move.
+     */
+    private Board board;
+    /**
+     * The empty cells of the position.
+     */
+    private int[] empties;
+    /**
+     * The integer line scores of the default weights.
+     */
+    private int[] lineScores;
+    /**
+     * The scores of every placement, filled by placementEvaluations.
+     */
+    private int[] placementScores;
+    /**
+     * The scores of every rotation, filled by rotationEvaluations.
+     */
+    private int[] rotationScores;
+    /**
+     * The number of operations run so far, used to cycle through the empty
+     * cells, quads and directions.
+     */
+    private int step;
+
+    /**
+     * Builds the position and the tables the benchmarks use.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        board = state.Benchmark.position(position);
+
+        empties = new int[board.getEmptyCount()];
+        for (int cell = 0, i = 0; cell < Board.BOARD_SIZE; cell++) {
+            if (board.getCell(cell) == Board.EMPTY) {
+                empties[i++] = cell;
+            }
+        }
+
+        double[][] scores = PentagoMain.DEFAULT_SCORES;
+        int[][] weights = new int[scores.length][];
+        for (int i = 0; i < scores.length; i++) {
+            weights[i] = new int[scores[i].length];
+            for (int j = 0; j < scores[i].length; j++) {
+                weights[i][j] = (int) Math.round(scores[i][j]);
+            }
+        }
+        lineScores = Board.lineScores(weights);
+        placementScores = new int[Board.BOARD_SIZE];
+        rotationScores = new int[Move.NUM_ROTATIONS];
+    }
+
+    @Benchmark
+    public double evaluation() {
+        return board.evaluation(PentagoMain.DEFAULT_SCORES);
+    }
+
+    @Benchmark
+    public int placementEvaluations() {
+        board.placementEvaluations(Board.BLACK, lineScores, placementScores);
+
+        return placementScores[empties[step++ % empties.length]];
+    }
+
+    @Benchmark
+    public int rotationEvaluations() {
+        int i = step++;
+        board.rotationEvaluations(Board.BLACK, empties[i % empties.length], lineScores, rotationScores);
+
+        return rotationScores[i % Move.NUM_ROTATIONS];
+    }
+
+    @Benchmark
+    public long rotateQuadrant() {
+        board.rotateQuadrant(step++ & (Board.NUM_QUADS - 1), 1);
+
+        return board.getHash(Board.BLACK);
+    }
+
+    @Benchmark
+    public double setCellClearCell() {
+        int cell = empties[step++ % empties.length];
+
+        board.setCell(cell, Board.BLACK);
+        double eval = board.evaluation(PentagoMain.DEFAULT_SCORES);
+        board.clearCell(cell);
+
+        return eval;
+    }
+
+    @Benchmark
+    public double moveUndo() {
+        int i = step++;
+        int cell = empties[i % empties.length];
+
+        board.saveState();
+        board.move(Board.BLACK, cell, i & (Board.NUM_QUADS - 1), (i & Board.NUM_QUADS) != 0);
+        double eval = board.evaluation(PentagoMain.DEFAULT_SCORES);
+        board.restoreState();
+
+        return eval;
+    }
+}
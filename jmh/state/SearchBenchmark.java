@@ -0,0 +1,126 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of fixed-depth searches from each of the benchmark
+ * positions, starting every search from an empty transposition table:
+ * timeToDepth reports the milliseconds per search, and nodesPerSecond the
+ * searches per second along with the nodes searched per second.
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class SearchBenchmark {
+    /**
+     * The name of the position searched.
+     */
+    @Param({"opening", "midgame", "near-terminal"})
+    public String position;
+    /**
+     * The depth searched to.
+     */
+    @Param({"1", "2", "3"})
+    public int depth;
+
+    /**
+     * The position searched, with black on-move.
+     */
+    private Board board;
+    /**
+     * The transposition table, cleared before each search.
+     */
+    private TranspositionTable table;
+    /**
+     * The search of the current invocation.
+     */
+    private Search search;
+
+    /**
+     * The nodes searched, reported by JMH as a rate.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Nodes {
+        /**
+         * The number of nodes searched in the current iteration.
+         */
+        public long nodes;
+
+        /**
+         * Resets the count at the start of each iteration.
+         */
+        @Setup(Level.Iteration)
+        public void clear() {
+            nodes = 0;
+        }
+    }
+
+    /**
+     * Builds the position and the table.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        board = state.Benchmark.position(position);
+        table = new TranspositionTable();
+    }
+
+    /**
+     * Starts each search with a new Search and an empty table, so that no
+     * invocation benefits from the one before.
+     */
+    @Setup(Level.Invocation)
+    public void newSearch() {
+        table.clear();
+        search = new Search(PentagoMain.DEFAULT_SCORES, table);
+    }
+
+    /**
+     * Shuts down the search of the invocation.
+     */
+    @TearDown(Level.Invocation)
+    public void closeSearch() {
+        search.close();
+    }
+
+    @Benchmark
+    public NodeEval timeToDepth() {
+        return search.findBestMove(board, Board.BLACK, depth);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public NodeEval nodesPerSecond(final Nodes nodes) {
+        NodeEval eval = search.findBestMove(board, Board.BLACK, depth);
+        nodes.nodes += search.getStats().getNodes();
+
+        return eval;
+    }
+}
@@ -0,0 +1,393 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The entry-point class for analyzing a stream of positions in bulk. Lines
+ * are read one at a time and handed to a fixed pool of workers, each with its
+ * own Search and Board. At most a fixed number of positions per worker are
+ * read ahead of the output, so reading waits for the workers rather than
+ * filling memory, however long the input.
+ * <p>
+ * Usage: java state.BatchAnalyzer input|- output|- [depth n] [time ms]
+ * [nodes n] [threads n] [tagged]
+ * <p>
+ * Input lines hold the 36 cells in row order as 'b', 'w' or '.', a space,
+ * the color on-move as b or w, and optionally a space and a tag. Output
+ * lines hold, separated by tabs, the best move in the standard form
+ * "block/cell quadDir", the score from white's point of view, the completed
+ * depth, the number of nodes searched and the number of milliseconds taken.
+ * Output is in input order, unless tagged is given, in which case each line
+ * is written as soon as it is ready and starts with the input line's tag, or
+ * its line number if it has none. With no limits each position is searched
+ * to DEFAULT_DEPTH.
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+public class BatchAnalyzer {
+    /**
+     * The scoring weights used by every worker.
+     */
+    private static final double[][] SCORES = PentagoMain.DEFAULT_SCORES;
+    /**
+     * The depth searched when no limit is given.
+     */
+    private static final int DEFAULT_DEPTH = 3;
+    /**
+     * The number of transposition table entries of each worker's search.
+     */
+    private static final int TABLE_ENTRIES = 1 << 18;
+    /**
+     * The number of positions per worker that may be read before their
+     * results are written.
+     */
+    private static final int IN_FLIGHT_PER_WORKER = 4;
+    /**
+     * The number of nanoseconds in a millisecond.
+     */
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /**
+     * A line of input waiting to be analyzed.
+     */
+    private static class Job {
+        /**
+         * The line's position in the input, counting from 0.
+         */
+        private final long index;
+        /**
+         * The line itself, or null to tell a worker to finish.
+         */
+        private final String line;
+
+        /**
+         * Constructs a job.
+         * @param index the line's position in the input
+         * @param line the line itself, or null to tell a worker to finish
+         */
+        Job(final long index, final String line) {
+            this.index = index;
+            this.line = line;
+        }
+    }
+
+    /**
+     * The deepest iteration searched per position.
+     */
+    private final int maxDepth;
+    /**
+     * The number of milliseconds searched per position, or 0 for no limit.
+     */
+    private final long timeBudget;
+    /**
+     * The number of nodes searched per position, or 0 for no limit.
+     */
+    private final long nodeBudget;
+    /**
+     * Whether results are written as soon as they are ready, each with its
+     * tag, rather than in input order.
+     */
+    private final boolean tagged;
+    /**
+     * The results.
+     */
+    private final PrintWriter out;
+    /**
+     * The lines read but not yet analyzed.
+     */
+    private final BlockingQueue<Job> queue;
+    /**
+     * One permit for each line that may be read before its result is
+     * written.
+     */
+    private final Semaphore inFlight;
+    /**
+     * The results that are ready but wait on earlier lines' results, by the
+     * index of their line.
+     */
+    private final Map<Long, String> pending;
+    /**
+     * The index of the next line whose result is to be written in input
+     * order.
+     */
+    private long nextIndex;
+
+    /**
+     * Constructs an analyzer.
+     * @param maxDepth the deepest iteration searched per position
+     * @param timeBudget the number of milliseconds per position, or 0
+     * @param nodeBudget the number of nodes per position, or 0
+     * @param tagged whether to write results as soon as they are ready
+     * @param workers the number of workers
+     * @param out the results
+     */
+    private BatchAnalyzer(final int maxDepth,
+                          final long timeBudget,
+                          final long nodeBudget,
+                          final boolean tagged,
+                          final int workers,
+                          final PrintWriter out) {
+        this.maxDepth = maxDepth;
+        this.timeBudget = timeBudget;
+        this.nodeBudget = nodeBudget;
+        this.tagged = tagged;
+        this.out = out;
+        queue = new ArrayBlockingQueue<>(workers * IN_FLIGHT_PER_WORKER);
+        inFlight = new Semaphore(workers * IN_FLIGHT_PER_WORKER);
+        pending = new HashMap<>();
+        nextIndex = 0;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            printUsage();
+            return;
+        }
+
+        int depth = 0;
+        long time = 0;
+        long nodes = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean tagged = false;
+
+        try {
+            for (int i = 2; i < args.length; i++) {
+                switch (args[i]) {
+                    case "depth":
+                        depth = (int) optionValue(args, ++i, Integer.MAX_VALUE);
+                        break;
+                    case "time":
+                        time = optionValue(args, ++i, Long.MAX_VALUE);
+                        break;
+                    case "nodes":
+                        nodes = optionValue(args, ++i, Long.MAX_VALUE);
+                        break;
+                    case "threads":
+                        threads = (int) optionValue(args, ++i, Integer.MAX_VALUE);
+                        break;
+                    case "tagged":
+                        tagged = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+
+            if (threads < 1) {
+                throw new IllegalArgumentException("Bad value for threads: " + threads);
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            printUsage();
+            return;
+        }
+
+        if (depth == 0) {
+            depth = (time == 0 && nodes == 0) ? DEFAULT_DEPTH : Board.BOARD_SIZE;
+        }
+
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                     args[0].equals("-") ? System.in : new FileInputStream(args[0]),
+                     StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                     args[1].equals("-") ? System.out : new FileOutputStream(args[1]),
+                     StandardCharsets.UTF_8))) {
+            new BatchAnalyzer(depth, time, nodes, tagged, threads, out).run(in, threads);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Prints how the analyzer is run.
+     */
+    private static void printUsage() {
+        System.out.println("Usage: java state.BatchAnalyzer input|- output|- [depth n] [time ms]"
+                           + " [nodes n] [threads n] [tagged]");
+    }
+
+    /**
+     * Reads the value of a command-line option.
+     * @param args the command-line arguments
+     * @param index the index of the value, just after the option's name
+     * @param max the greatest value allowed
+     * @return the value
+     * @throws IllegalArgumentException if the value is missing, is not a
+     * number, or is negative or too large
+     */
+    private static long optionValue(final String[] args, final int index, final long max) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+
+        long value;
+        try {
+            value = Long.parseLong(args[index]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad value for " + args[index - 1] + ": " + args[index]);
+        }
+
+        if (value < 0 || value > max) {
+            throw new IllegalArgumentException("Bad value for " + args[index - 1] + ": " + args[index]);
+        }
+
+        return value;
+    }
+
+    /**
+     * Analyzes every line of the input.
+     * @param in the input
+     * @param workers the number of workers
+     * @throws IOException if the input cannot be read
+     * @throws InterruptedException if interrupted while waiting for a worker
+     */
+    private void run(final BufferedReader in, final int workers) throws IOException,
+                                                                        InterruptedException {
+        Thread[] threads = new Thread[workers];
+
+        for (int i = 0; i < workers; i++) {
+            threads[i] = new Thread(this::work, "batch-analyzer-" + i);
+            threads[i].start();
+        }
+
+        try {
+            long index = 0;
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                inFlight.acquire();
+                queue.put(new Job(index++, line));
+            }
+        } finally {
+            for (int i = 0; i < workers; i++) {
+                queue.put(new Job(-1, null));
+            }
+
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+    }
+
+    /**
+     * Analyzes lines from the queue until told to finish. Runs on each
+     * worker's thread. Every line gets a result, an error if its analysis
+     * fails, so that the lines after it are never left waiting; the worker
+     * then carries on with a fresh Search and Board.
+     */
+    private void work() {
+        Search search = new Search(SCORES, new TranspositionTable(TABLE_ENTRIES));
+        Board board = new Board();
+
+        try {
+            for (Job job = queue.take(); job.line != null; job = queue.take()) {
+                String result = null;
+
+                try {
+                    result = analyze(search, board, job);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    search.close();
+                    search = new Search(SCORES, new TranspositionTable(TABLE_ENTRIES));
+                    board = new Board();
+                } finally {
+                    if (result == null) {
+                        result = tag(job, job.line.trim().split("\\s+"), "error\tanalysis failed");
+                    }
+                    complete(job.index, result);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            search.close();
+        }
+    }
+
+    /**
+     * Analyzes a single line.
+     * @param search the worker's search
+     * @param board the worker's board, which is overwritten
+     * @param job the line
+     * @return the result line, without its tag
+     */
+    private String analyze(final Search search, final Board board, final Job job) {
+        String[] fields = job.line.trim().split("\\s+");
+
+        if (fields.length < 2 || !(fields[1].equals("b") || fields[1].equals("w"))
+                || !board.setCells(fields[0])) {
+            return tag(job, fields, "error\tbad position");
+        }
+
+        if (board.getResult() != Board.UNFINISHED) {
+            return tag(job, fields, "none\t" + NodeEval.formatEval(board.evaluation(SCORES)) + "\t0\t0\t0");
+        }
+
+        byte turn = fields[1].equals("w") ? Board.WHITE : Board.BLACK;
+
+        long start = System.nanoTime();
+        NodeEval eval = search.findBestMove(board, turn, maxDepth, timeBudget, nodeBudget);
+        long elapsed = (System.nanoTime() - start) / NANOS_PER_MILLI;
+
+        return tag(job, fields, Move.toNotation(Move.fromNodeEval(eval))
+                                + "\t" + NodeEval.formatEval(eval.eval)
+                                + "\t" + search.getCompletedDepth()
+                                + "\t" + search.getNodeCount()
+                                + "\t" + elapsed);
+    }
+
+    /**
+     * Puts a line's tag in front of its result, if results are tagged.
+     * @param job the line
+     * @param fields the fields of the line
+     * @param result the result
+     * @return the result line
+     */
+    private String tag(final Job job, final String[] fields, final String result) {
+        if (!tagged) {
+            return result;
+        }
+
+        return ((fields.length > 2) ? fields[2] : Long.toString(job.index + 1)) + "\t" + result;
+    }
+
+    /**
+     * Writes a line's result, or holds it until the results of every earlier
+     * line are written if results are in input order.
+     * @param index the index of the line
+     * @param result the result line
+     */
+    private synchronized void complete(final long index, final String result) {
+        if (tagged) {
+            out.println(result);
+            inFlight.release();
+            return;
+        }
+
+        pending.put(index, result);
+
+        for (String next = pending.remove(nextIndex); next != null; next = pending.remove(nextIndex)) {
+            out.println(next);
+            nextIndex++;
+            inFlight.release();
+        }
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The entry-point class for measuring the throughput of Board and Search on
+ * a fixed suite of positions. Results are printed as CSV or JSON so that runs
+ * can be compared over time. This is a quick check that needs only javac and
+ * java; the JMH benchmarks under jmh/, built with the jmh Maven profile, run
+ * the same suite with warmup and forked JVMs and are the ones to track.
+ * <p>
+ * Usage: java state.Benchmark [csv|json] [output file]
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+public class Benchmark {
+    /**
+     * The scoring weights used for every benchmark.
+     */
+    private static final double[][] SCORES = PentagoMain.DEFAULT_SCORES;
+    /**
+     * The names of the benchmark positions.
+     */
+    static final String[] POSITION_NAMES = {"opening", "midgame", "near-terminal"};
+    /**
+     * The benchmark positions, one string per row, using 'b' for black,
+     * 'w' for white and '.' for an empty cell. Black is on-move in each.
+     */
+    static final String[][] POSITIONS = {{"......",
+                                         "....b.",
+                                         "......",
+                                         "...b..",
+                                         ".ww...",
+                                         "......"},
+                                        {"...b.b",
+                                         "....b.",
+                                         "w.....",
+                                         "ww..bb",
+                                         "ww.wwb",
+                                         "...b.."},
+                                        {"bwwbww",
+                                         "bb.b.b",
+                                         "wwbw.w",
+                                         "bw.wb.",
+                                         "..bww.",
+                                         "wbbwbb"}};
+    /**
+     * The deepest search timed from each benchmark position.
+     */
+    private static final int[] SEARCH_DEPTHS = {3, 3, 5};
+    /**
+     * The number of milliseconds each throughput benchmark runs before it is
+     * measured, to let the JIT compiler settle.
+     */
+    private static final long WARMUP_MILLIS = 1000;
+    /**
+     * The number of milliseconds over which each throughput benchmark is
+     * measured.
+     */
+    private static final long MEASURE_MILLIS = 2000;
+    /**
+     * The number of operations run between checks of the clock.
+     */
+    private static final int BATCH_SIZE = 1 << 12;
+    /**
+     * The number of nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+    /**
+     * The number of nanoseconds in a millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Accumulates the results of benchmarked operations so that the JIT
+     * compiler cannot discard them.
+     */
+    private static volatile double sink;
+
+    /**
+     * A batch of benchmarked operations.
+     */
+    private interface Workload {
+        /**
+         * Runs the operations.
+         * @param reps the number of operations to run
+         * @return a value depending on the operations' results
+         */
+        double run(int reps);
+    }
+
+    /**
+     * A single measurement.
+     */
+    private static class Result {
+        /**
+         * The name of the position measured.
+         */
+        private final String position;
+        /**
+         * The name of the quantity measured.
+         */
+        private final String metric;
+        /**
+         * The measured value.
+         */
+        private final double value;
+        /**
+         * The unit of the measured value.
+         */
+        private final String unit;
+
+        /**
+         * Constructs a measurement.
+         * @param position the name of the position measured
+         * @param metric the name of the quantity measured
+         * @param value the measured value
+         * @param unit the unit of the measured value
+         */
+        Result(final String position, final String metric, final double value, final String unit) {
+            this.position = position;
+            this.metric = metric;
+            this.value = value;
+            this.unit = unit;
+        }
+    }
+
+    public static void main(String[] args) {
+        boolean json = args.length > 0 && args[0].equalsIgnoreCase("json");
+
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < POSITIONS.length; i++) {
+            runPosition(POSITION_NAMES[i], parsePosition(POSITIONS[i]), SEARCH_DEPTHS[i], results);
+        }
+
+        try {
+            PrintStream out = (args.length > 1) ? new PrintStream(new File(args[1])) : System.out;
+
+            if (json) {
+                printJson(out, results);
+            } else {
+                printCsv(out, results);
+            }
+
+            out.flush();
+            if (out != System.out) {
+                out.close();
+            }
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Builds the benchmark position of a given name.
+     * @param name one of POSITION_NAMES
+     * @return the board, with black on-move
+     * @throws IllegalArgumentException if there is no such position
+     */
+    static Board position(final String name) {
+        for (int i = 0; i < POSITION_NAMES.length; i++) {
+            if (POSITION_NAMES[i].equals(name)) {
+                return parsePosition(POSITIONS[i]);
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown benchmark position: " + name);
+    }
+
+    /**
+     * Builds a board from one of the benchmark positions.
+     * @param rows the rows of the position, top to bottom
+     * @return the board
+     */
+    static Board parsePosition(final String[] rows) {
+        Board board = new Board();
+
+        for (int y = 0; y < Board.BOARD_HEIGHT; y++) {
+            for (int x = 0; x < Board.BOARD_WIDTH; x++) {
+                char c = rows[y].charAt(x);
+
+                if (c != '.') {
+                    board.setCell(y * Board.BOARD_WIDTH + x, (c == 'w') ? Board.WHITE : Board.BLACK);
+                }
+            }
+        }
+
+        return board;
+    }
+
+    /**
+     * Runs every benchmark on a single position.
+     * @param name the name of the position
+     * @param board the position, with black on-move
+     * @param searchDepth the deepest search to time
+     * @param results the list to receive the measurements
+     */
+    private static void runPosition(final String name,
+                                    final Board board,
+                                    final int searchDepth,
+                                    final List<Result> results) {
+        int[] empties = new int[board.getEmptyCount()];
+        for (int cell = 0, i = 0; cell < Board.BOARD_SIZE; cell++) {
+            if (board.getCell(cell) == Board.EMPTY) {
+                empties[i++] = cell;
+            }
+        }
+
+        results.add(new Result(name, "evaluation", rate(reps -> {
+            double sum = 0;
+            for (int i = 0; i < reps; i++) {
+                sum += board.evaluation(SCORES);
+            }
+            return sum;
+        }), "ops/s"));
+
+        int[][] weights = new int[SCORES.length][];
+        for (int i = 0; i < SCORES.length; i++) {
+            weights[i] = new int[SCORES[i].length];
+            for (int j = 0; j < SCORES[i].length; j++) {
+                weights[i][j] = (int) Math.round(SCORES[i][j]);
+            }
+        }
+        int[] lineScores = Board.lineScores(weights);
+        int[] placementScores = new int[Board.BOARD_SIZE];
+
+        results.add(new Result(name, "placementEvaluations", rate(reps -> {
+            double sum = 0;
+            for (int i = 0; i < reps; i++) {
+                board.placementEvaluations(Board.BLACK, lineScores, placementScores);
+                sum += placementScores[empties[i % empties.length]];
+            }
+            return sum;
+        }), "ops/s"));
+
+        int[] rotationScores = new int[Move.NUM_ROTATIONS];
+
+        results.add(new Result(name, "rotationEvaluations", rate(reps -> {
+            double sum = 0;
+            for (int i = 0; i < reps; i++) {
+                board.rotationEvaluations(Board.BLACK, empties[i % empties.length], lineScores, rotationScores);
+                sum += rotationScores[i % Move.NUM_ROTATIONS];
+            }
+            return sum;
+        }), "ops/s"));
+
+        results.add(new Result(name, "rotateQuadrant", rate(reps -> {
+            for (int i = 0; i < reps; i++) {
+                board.rotateQuadrant(i & (Board.NUM_QUADS - 1), 1);
+            }
+            return board.getHash(Board.BLACK);
+        }), "ops/s"));
+
+        results.add(new Result(name, "setCell+clearCell", rate(reps -> {
+            double sum = 0;
+            for (int i = 0; i < reps; i++) {
+                int cell = empties[i % empties.length];
+                board.setCell(cell, Board.BLACK);
+                sum += board.evaluation(SCORES);
+                board.clearCell(cell);
+            }
+            return sum;
+        }), "ops/s"));
+
+        results.add(new Result(name, "move+undo", rate(reps -> {
+            double sum = 0;
+            for (int i = 0; i < reps; i++) {
+                int cell = empties[i % empties.length];
+                board.saveState();
+                board.move(Board.BLACK, cell, i & (Board.NUM_QUADS - 1), (i & Board.NUM_QUADS) != 0);
+                sum += board.evaluation(SCORES);
+                board.restoreState();
+            }
+            return sum;
+        }), "ops/s"));
+
+        new Search(SCORES).findBestMove(board, Board.BLACK, searchDepth);
+
+        for (int depth = 1; depth <= searchDepth; depth++) {
+            Search search = new Search(SCORES);
+
+            long start = System.nanoTime();
+            NodeEval eval = search.findBestMove(board, Board.BLACK, depth);
+            long elapsed = Math.max(System.nanoTime() - start, 1);
+
+            sink += eval.quad;
+
+            results.add(new Result(name, "time-to-depth-" + depth, elapsed / NANOS_PER_MILLI, "ms"));
+            results.add(new Result(name, "nodes-depth-" + depth, search.getNodeCount(), "nodes"));
+            results.add(new Result(name,
+                                   "nps-depth-" + depth,
+                                   search.getNodeCount() * NANOS_PER_SECOND / elapsed,
+                                   "nodes/s"));
+        }
+    }
+
+    /**
+     * Measures the rate at which a workload runs, after warming it up.
+     * @param workload the workload to measure
+     * @return the number of operations run per second
+     */
+    private static double rate(final Workload workload) {
+        long warmupEnd = System.nanoTime() + (long) (WARMUP_MILLIS * NANOS_PER_MILLI);
+        while (System.nanoTime() < warmupEnd) {
+            sink += workload.run(BATCH_SIZE);
+        }
+
+        long ops = 0;
+        long start = System.nanoTime();
+        long end = start + (long) (MEASURE_MILLIS * NANOS_PER_MILLI);
+        long now = start;
+
+        while (now < end) {
+            sink += workload.run(BATCH_SIZE);
+            ops += BATCH_SIZE;
+            now = System.nanoTime();
+        }
+
+        return ops * NANOS_PER_SECOND / (now - start);
+    }
+
+    /**
+     * Prints measurements as CSV, one per line after a header line.
+     * @param out the stream to print to
+     * @param results the measurements
+     */
+    private static void printCsv(final PrintStream out, final List<Result> results) {
+        out.println("position,metric,value,unit");
+
+        for (Result result : results) {
+            out.println(result.position + "," + result.metric + ","
+                        + format(result.value) + "," + result.unit);
+        }
+    }
+
+    /**
+     * Prints measurements as a JSON object, along with the Java version and
+     * processor count of the machine that took them.
+     * @param out the stream to print to
+     * @param results the measurements
+     */
+    private static void printJson(final PrintStream out, final List<Result> results) {
+        out.println("{");
+        out.println("  \"java\": \"" + System.getProperty("java.version") + "\",");
+        out.println("  \"processors\": " + Runtime.getRuntime().availableProcessors() + ",");
+        out.println("  \"results\": [");
+
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+
+            out.println("    {\"position\": \"" + result.position
+                        + "\", \"metric\": \"" + result.metric
+                        + "\", \"value\": " + format(result.value)
+                        + ", \"unit\": \"" + result.unit + "\"}"
+                        + ((i < results.size() - 1) ? "," : ""));
+        }
+
+        out.println("  ]");
+        out.println("}");
+    }
+
+    /**
+     * Formats a measured value independently of the default locale.
+     * @param value the value
+     * @return the value with three decimal places
+     */
+    private static String format(final double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
@@ -6,6 +6,9 @@
 
 package state;
 
+import java.util.Arrays;
+import java.util.Random;
+
 /**
  * A definition for a Pentago board, that describes the entire state space.
  * @author Neil Hulbert
@@ -65,25 +68,26 @@ public class Board {
      */
     private static final int QUAD_HEIGHT = BOARD_HEIGHT / 2;
     /**
-     * The number of bytes that represent the board's contents.
+     * The number of sub-blocks on the board.
      */
-    private static final int BOARD_BYTES = 9;
+    public static final int NUM_QUADS = 4;
     /**
-     * The number of bits used to represent each cell.
+     * The number of cells in a board sub-block.
      */
-    private static final int LOC_SIZE = 2;
+    private static final int QUAD_SIZE = QUAD_WIDTH * QUAD_HEIGHT;
     /**
-     * The number of bits in each byte.
+     * The number of possible arrangements of stones of one color within a
+     * sub-block.
      */
-    private static final int BYTE_SIZE = 8;
+    private static final int QUAD_PATTERNS = 1 << QUAD_SIZE;
     /**
-     * The number of cells that can be described with a byte.
+     * The number of distinct quarter-turn rotations of a sub-block.
      */
-    private static final int LOCS_PER_BYTE = BYTE_SIZE / LOC_SIZE;
+    private static final int NUM_ROTATIONS = 4;
     /**
-     * A mask used to access a single location.
+     * The mask of the three bits making up one row of a sub-block.
      */
-    private static final byte LOC_MASK = 0b11;
+    private static final long QUAD_ROW_MASK = (1L << QUAD_WIDTH) - 1;
     /**
      * The number of cells in a row needed to win.
      */
@@ -101,39 +105,619 @@ public class Board {
                                               {5, 1, -1, 1, 5}};
 
     /**
-     * Describes each possible rotation of block 0 with cells numbered left-to-right,
-     * top-to-bottom for the entire board. Used to index rotations in all blocks
-     * using an offset. -1 appears where the corresponding indices are outside the
-     * block in question.
+     * The bit index of the top-left cell of each sub-block. Cells are stored
+     * one bit per cell, numbered left-to-right, top-to-bottom.
+     */
+    private static final int[] QUAD_OFFSETS = new int[NUM_QUADS];
+    /**
+     * The mask of all cells belonging to each sub-block.
+     */
+    private static final long[] QUAD_MASKS = new long[NUM_QUADS];
+    /**
+     * Maps a 9-bit sub-block pattern, numbered left-to-right, top-to-bottom,
+     * to the bits it occupies in sub-block 0 of the board. Shifting the result
+     * by a sub-block's offset places the pattern in that sub-block.
+     */
+    private static final long[] SPREAD = new long[QUAD_PATTERNS];
+    /**
+     * ROTATED_PATTERNS[r][p] is the 9-bit sub-block pattern p rotated r quarter
+     * turns clockwise.
+     */
+    private static final short[][] ROTATED_PATTERNS = new short[NUM_ROTATIONS][QUAD_PATTERNS];
+    /**
+     * The number of lines in which a win is possible: every row, every column
+     * and each of the DIAGONALS.
+     */
+    private static final int NUM_LINES = BOARD_HEIGHT + BOARD_WIDTH + DIAGONALS.length;
+    /**
+     * The cells of each line in the order the lines are scanned for streaks:
+     * rows top-to-bottom, then columns left-to-right, then the DIAGONALS.
+     */
+    private static final int[][] LINES = new int[NUM_LINES][];
+    /**
+     * The indices in LINES of the lines passing through each cell.
+     */
+    private static final int[][] CELL_LINES = new int[BOARD_SIZE][];
+    /**
+     * CELL_PLACES[c][k] is the place value, a power of 3, of cell c's digit
+     * within the pattern of the line CELL_LINES[c][k].
+     */
+    private static final int[][] CELL_PLACES = new int[BOARD_SIZE][];
+    /**
+     * The indices in LINES of the lines passing through each sub-block.
+     */
+    private static final int[][] QUAD_LINES = new int[NUM_QUADS][];
+    /**
+     * The most lines passing through any one cell.
+     */
+    private static final int MAX_CELL_LINES;
+    /**
+     * The most lines passing through any one sub-block.
+     */
+    private static final int MAX_QUAD_LINES;
+    /**
+     * The number of moves that place on a given cell, one per rotation.
+     */
+    private static final int CELL_MOVES = 2 * NUM_QUADS;
+    /**
+     * Whether batches of evaluations are summed with the Vector API. Only the
+     * case when the jdk.incubator.vector module has been added to the JVM,
+     * as with --add-modules jdk.incubator.vector, and the pentago.vector
+     * system property is not "false".
+     */
+    private static final boolean VECTOR_SUMS =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && !"false".equals(System.getProperty("pentago.vector"));
+    /**
+     * The line code flag marking a line that holds five white cells in a row.
+     */
+    private static final int WHITE_FIVE = 0b01;
+    /**
+     * The line code flag marking a line that holds five black cells in a row.
+     */
+    private static final int BLACK_FIVE = 0b10;
+    /**
+     * The mask of both five-in-a-row flags of a line code.
+     */
+    private static final int FIVES = WHITE_FIVE | BLACK_FIVE;
+    /**
+     * The position of the number of scoring terms within a line code.
+     */
+    private static final int TERM_COUNT_SHIFT = 2;
+    /**
+     * The mask of the number of scoring terms once shifted into place.
+     */
+    private static final int TERM_COUNT_MASK = 0b111;
+    /**
+     * A bound on the number of scoring terms of a board, so that no
+     * evaluation of an unfinished game exceeds this many times the largest
+     * scoring weight in magnitude.
+     */
+    public static final int MAX_EVAL_TERMS = NUM_LINES * TERM_COUNT_MASK;
+    /**
+     * The position of the first scoring term within a line code.
+     */
+    private static final int TERMS_SHIFT = 5;
+    /**
+     * The number of bits used by each scoring term of a line code.
+     */
+    private static final int TERM_BITS = 5;
+    /**
+     * The mask of a single scoring term once shifted into place.
+     */
+    private static final int TERM_MASK = (1 << TERM_BITS) - 1;
+    /**
+     * The scoring term flag marking a term that counts for black.
+     */
+    private static final int TERM_NEGATIVE = 0b10000;
+    /**
+     * The position of the streak length, less NUM_TO_WIN, within a scoring term.
+     * The bits below it hold the number of filled in cells of the streak.
+     */
+    private static final int TERM_LENGTH_SHIFT = 3;
+    /**
+     * The mask of the number of filled in cells within a scoring term.
+     */
+    private static final int TERM_ACTUAL_MASK = (1 << TERM_LENGTH_SHIFT) - 1;
+    /**
+     * The number of values a cell can take within a line pattern: 0 for
+     * empty, 1 for black and 2 for white.
+     */
+    private static final int CELL_VALUES = 3;
+    /**
+     * The number of patterns of a line as long as the board is wide, 3^6.
+     * The patterns of the shorter diagonals are numbered after these.
+     */
+    private static final int LONG_LINE_PATTERNS = 729;
+    /**
+     * The number of patterns of all lines: those of the long lines, then the
+     * 3^5 patterns of the lines just long enough for five in a row.
+     */
+    private static final int LINE_PATTERNS = LONG_LINE_PATTERNS + 243;
+    /**
+     * LINE_CODES[p] is the streak code of a line with pattern p, as found by
+     * the streak collector. A line's pattern is its cells read as a base-3
+     * number, its first cell being the lowest digit, plus LONG_LINE_PATTERNS
+     * if it is a short line.
+     */
+    private static final int[] LINE_CODES = new int[LINE_PATTERNS];
+    /**
+     * The number of board states reserved on the undo stack when it is first
+     * created.
+     */
+    private static final int INITIAL_STACK_DEPTH = 2 * BOARD_SIZE;
+    /**
+     * The number of ways to fit five cells in a row on the board: two along
+     * each row, column and long diagonal, and one along each short diagonal.
+     */
+    private static final int NUM_FIVES = 32;
+    /**
+     * A bitboard of the cells of each possible five-in-a-row.
+     */
+    private static final long[] FIVE_MASKS = new long[NUM_FIVES];
+    /**
+     * The bitboards in FIVE_MASKS that include each cell.
+     */
+    private static final long[][] CELL_FIVES = new long[BOARD_SIZE][];
+    /**
+     * The bitboards in FIVE_MASKS that include any cell of each sub-block.
+     */
+    private static final long[][] QUAD_FIVES = new long[NUM_QUADS][];
+    /**
+     * The number of longs saved on the undo stack for each board state: the
+     * black stones, the white stones and the hash.
+     */
+    private static final int SAVED_LONGS = 3;
+    /**
+     * The number of ints saved on the undo stack for each board state: the
+     * line patterns, the half-turn count and the counts of each color's
+     * completed fives.
+     */
+    private static final int SAVED_INTS = NUM_LINES + 3;
+    /**
+     * The seed for the Zobrist keys. It is fixed so that hashes are the same
+     * from one run to the next.
+     */
+    private static final long ZOBRIST_SEED = 0x9E3779B97F4A7C15L;
+    /**
+     * ZOBRIST[c][i] is the random key for a stone of color c, 0 for black and
+     * 1 for white, in cell i.
+     */
+    private static final long[][] ZOBRIST = new long[2][BOARD_SIZE];
+    /**
+     * QUAD_ZOBRIST[c][q][p] is the combined key of stones of color c filling
+     * 9-bit pattern p of sub-block q, used to update the hash on a rotation.
+     */
+    private static final long[][][] QUAD_ZOBRIST = new long[2][NUM_QUADS][QUAD_PATTERNS];
+    /**
+     * The key combined into the hash when white is on-move.
+     */
+    private static final long WHITE_TO_MOVE;
+    /**
+     * The number of symmetries of the board: four rotations of the whole
+     * board, each with and without a mirror image.
+     */
+    public static final int NUM_SYMMETRIES = 8;
+    /**
+     * SYMMETRY_CELLS[s][i] is the cell to which symmetry s moves cell i.
+     * Symmetry s mirrors the board left-to-right if s is at least 4, then
+     * rotates it s % 4 quarter turns clockwise.
+     */
+    private static final int[][] SYMMETRY_CELLS = new int[NUM_SYMMETRIES][BOARD_SIZE];
+    /**
+     * SYMMETRY_QUADS[s][q] is the sub-block to which symmetry s moves
+     * sub-block q.
+     */
+    private static final int[][] SYMMETRY_QUADS = new int[NUM_SYMMETRIES][NUM_QUADS];
+    /**
+     * SYMMETRY_PATTERNS[s][p] is the 9-bit sub-block pattern p moved within
+     * its sub-block by symmetry s. Since the sub-blocks tile the board evenly,
+     * every sub-block is moved the same way.
+     */
+    private static final short[][] SYMMETRY_PATTERNS = new short[NUM_SYMMETRIES][QUAD_PATTERNS];
+    /**
+     * INVERSE_SYMMETRIES[s] is the symmetry which undoes symmetry s.
      */
-    private static final int[][] ROTATIONS =
-            {{0, 1, 2, -1, -1, -1, 6, 7, 8, -1, -1, -1, 12, 13, 14},
-             {12, 6, 0, -1, -1, -1, 13, 7, 1, -1, -1, -1, 14, 8, 2},
-             {14, 13, 12, -1, -1, -1, 8, 7, 6, -1, -1, -1, 2, 1, 0},
-             {2, 8, 14, -1, -1, -1, 1, 7, 13, -1, -1, -1, 0, 6, 12}};
+    private static final int[] INVERSE_SYMMETRIES = new int[NUM_SYMMETRIES];
+
+    static {
+        for (int quad = 0; quad < NUM_QUADS; quad++) {
+            QUAD_OFFSETS[quad] = QUAD_WIDTH * (quad % 2)
+                               + QUAD_HEIGHT * BOARD_WIDTH * (quad / 2);
+        }
+
+        for (int pattern = 0; pattern < QUAD_PATTERNS; pattern++) {
+            long spread = 0;
+            for (int i = 0; i < QUAD_SIZE; i++) {
+                if ((pattern & (1 << i)) != 0) {
+                    spread |= 1L << ((i / QUAD_WIDTH) * BOARD_WIDTH + i % QUAD_WIDTH);
+                }
+            }
+            SPREAD[pattern] = spread;
+
+            int rotated = pattern;
+            for (int r = 0; r < NUM_ROTATIONS; r++) {
+                ROTATED_PATTERNS[r][pattern] = (short) rotated;
+                rotated = rotateClockwise(rotated);
+            }
+        }
+
+        for (int quad = 0; quad < NUM_QUADS; quad++) {
+            QUAD_MASKS[quad] = SPREAD[QUAD_PATTERNS - 1] << QUAD_OFFSETS[quad];
+        }
+
+        int line = 0;
+        for (int y = 0; y < BOARD_HEIGHT; y++) {
+            LINES[line] = new int[BOARD_WIDTH];
+            for (int x = 0; x < BOARD_WIDTH; x++) {
+                LINES[line][x] = y * BOARD_WIDTH + x;
+            }
+            line++;
+        }
+
+        for (int x = 0; x < BOARD_WIDTH; x++) {
+            LINES[line] = new int[BOARD_HEIGHT];
+            for (int y = 0; y < BOARD_HEIGHT; y++) {
+                LINES[line][y] = y * BOARD_WIDTH + x;
+            }
+            line++;
+        }
+
+        for (int[] diagonal : DIAGONALS) {
+            LINES[line] = new int[diagonal[4]];
+            for (int i = 0; i < diagonal[4]; i++) {
+                LINES[line][i] = (diagonal[1] + i * diagonal[3]) * BOARD_WIDTH
+                               + diagonal[0] + i * diagonal[2];
+            }
+            line++;
+        }
+
+        for (int cell = 0; cell < BOARD_SIZE; cell++) {
+            CELL_LINES[cell] = linesThrough(1L << cell);
+            CELL_PLACES[cell] = new int[CELL_LINES[cell].length];
+
+            for (int k = 0; k < CELL_LINES[cell].length; k++) {
+                int place = 1;
+                for (int other : LINES[CELL_LINES[cell][k]]) {
+                    if (other == cell) {
+                        break;
+                    }
+                    place *= CELL_VALUES;
+                }
+                CELL_PLACES[cell][k] = place;
+            }
+        }
+
+        int five = 0;
+        for (int[] cells : LINES) {
+            for (int start = 0; start + NUM_TO_WIN <= cells.length; start++) {
+                long mask = 0;
+                for (int i = start; i < start + NUM_TO_WIN; i++) {
+                    mask |= 1L << cells[i];
+                }
+                FIVE_MASKS[five++] = mask;
+            }
+        }
+
+        for (int cell = 0; cell < BOARD_SIZE; cell++) {
+            CELL_FIVES[cell] = fivesThrough(1L << cell);
+        }
+
+        for (int quad = 0; quad < NUM_QUADS; quad++) {
+            QUAD_FIVES[quad] = fivesThrough(QUAD_MASKS[quad]);
+        }
+
+        for (int quad = 0; quad < NUM_QUADS; quad++) {
+            QUAD_LINES[quad] = linesThrough(QUAD_MASKS[quad]);
+        }
+
+        int maxCellLines = 0;
+        for (int[] lines : CELL_LINES) {
+            maxCellLines = Math.max(maxCellLines, lines.length);
+        }
+        MAX_CELL_LINES = maxCellLines;
+
+        int maxQuadLines = 0;
+        for (int[] lines : QUAD_LINES) {
+            maxQuadLines = Math.max(maxQuadLines, lines.length);
+        }
+        MAX_QUAD_LINES = maxQuadLines;
+
+        StreakCollector collector = new StreakCollector(NUM_TO_WIN, BOARD_WIDTH);
+        for (int pattern = 0; pattern < LINE_PATTERNS; pattern++) {
+            boolean isLong = pattern < LONG_LINE_PATTERNS;
+            int digits = isLong ? pattern : pattern - LONG_LINE_PATTERNS;
+            int length = isLong ? BOARD_WIDTH : NUM_TO_WIN;
+
+            collector.newLine();
+            for (int i = 0; i < length; i++) {
+                int digit = digits % CELL_VALUES;
+                digits /= CELL_VALUES;
+                collector.addVal((digit == 0) ? EMPTY : (digit == 1) ? BLACK : WHITE);
+            }
+            collector.finishLine();
+
+            LINE_CODES[pattern] = collector.getCode();
+        }
+
+        Random random = new Random(ZOBRIST_SEED);
+        for (int color = 0; color < 2; color++) {
+            for (int cell = 0; cell < BOARD_SIZE; cell++) {
+                ZOBRIST[color][cell] = random.nextLong();
+            }
+
+            for (int quad = 0; quad < NUM_QUADS; quad++) {
+                for (int pattern = 0; pattern < QUAD_PATTERNS; pattern++) {
+                    long key = 0;
+                    long cells = SPREAD[pattern] << QUAD_OFFSETS[quad];
+
+                    for (int cell = 0; cell < BOARD_SIZE; cell++) {
+                        if ((cells & (1L << cell)) != 0) {
+                            key ^= ZOBRIST[color][cell];
+                        }
+                    }
+                    QUAD_ZOBRIST[color][quad][pattern] = key;
+                }
+            }
+        }
+        WHITE_TO_MOVE = random.nextLong();
+
+        for (int sym = 0; sym < NUM_SYMMETRIES; sym++) {
+            for (int cell = 0; cell < BOARD_SIZE; cell++) {
+                SYMMETRY_CELLS[sym][cell] = transform(sym, cell, BOARD_WIDTH);
+            }
+
+            for (int quad = 0; quad < NUM_QUADS; quad++) {
+                SYMMETRY_QUADS[sym][quad] = transform(sym, quad, BOARD_WIDTH / QUAD_WIDTH);
+            }
+
+            for (int pattern = 0; pattern < QUAD_PATTERNS; pattern++) {
+                int moved = 0;
+                for (int i = 0; i < QUAD_SIZE; i++) {
+                    if ((pattern & (1 << i)) != 0) {
+                        moved |= 1 << transform(sym, i, QUAD_WIDTH);
+                    }
+                }
+                SYMMETRY_PATTERNS[sym][pattern] = (short) moved;
+            }
+        }
+
+        for (int sym = 0; sym < NUM_SYMMETRIES; sym++) {
+            for (int inverse = 0; inverse < NUM_SYMMETRIES; inverse++) {
+                boolean undoes = true;
+                for (int cell = 0; cell < BOARD_SIZE; cell++) {
+                    undoes &= SYMMETRY_CELLS[inverse][SYMMETRY_CELLS[sym][cell]] == cell;
+                }
+
+                if (undoes) {
+                    INVERSE_SYMMETRIES[sym] = inverse;
+                }
+            }
+        }
+    }
 
     /**
-     * A byte array that holds the value stored in each cell.
+     * A bitboard of the cells holding black stones, one bit per cell.
      */
-    private byte[] contents;
+    private long black;
     /**
-     * A byte array that holds the current rotations of each block,
-     * 0-3.
+     * A bitboard of the cells holding white stones, one bit per cell.
      */
-    private byte[] curRotation;
+    private long white;
     /**
      * Number of half-turns played on the board so far.
      */
     private int halfTurns;
+    /**
+     * The Zobrist hash of the stones on the board, updated as cells change.
+     */
+    private long hash;
+    /**
+     * The number of five-in-a-rows completed by black.
+     */
+    private int blackFives;
+    /**
+     * The number of five-in-a-rows completed by white.
+     */
+    private int whiteFives;
+    /**
+     * The pattern of each line in LINES, kept up to date as cells change so
+     * that only the lines through a changed cell or sub-block are rescanned.
+     */
+    private final int[] linePatterns;
+    /**
+     * The stones and hash saved by saveState, SAVED_LONGS entries per saved
+     * state.
+     */
+    private long[] savedStones;
+    /**
+     * The line patterns, half-turn count and five counts saved by saveState,
+     * SAVED_INTS entries per saved state.
+     */
+    private int[] savedCodes;
+    /**
+     * The number of states currently on the undo stack.
+     */
+    private int savedCount;
+    /**
+     * The line patterns added by each evaluation of a batch, laid out as
+     * for sumDifferences, or null until a batch is first evaluated.
+     */
+    private int[] addedPatterns;
+    /**
+     * The line patterns removed by each evaluation of a batch, laid out as
+     * for sumDifferences, or null until a batch is first evaluated.
+     */
+    private int[] removedPatterns;
+    /**
+     * The evaluations of a batch as they are summed, or null until a batch
+     * is first evaluated.
+     */
+    private int[] batchScores;
 
     /**
      * The parameterless constructor, initializes an empty board
      */
     public Board() {
-        contents = new byte[BOARD_BYTES];
-
-        curRotation = new byte[4];
+        black = 0;
+        white = 0;
         halfTurns = 0;
+        hash = 0;
+        blackFives = 0;
+        whiteFives = 0;
+
+        linePatterns = new int[NUM_LINES];
+        for (int line = 0; line < NUM_LINES; line++) {
+            linePatterns[line] = scanLine(line);
+        }
+
+        savedStones = new long[SAVED_LONGS * INITIAL_STACK_DEPTH];
+        savedCodes = new int[SAVED_INTS * INITIAL_STACK_DEPTH];
+        savedCount = 0;
+    }
+
+    /**
+     * The copy constructor, initializes a board with the same contents as
+     * another board and an empty undo stack.
+     * @param other the board to copy
+     */
+    public Board(final Board other) {
+        black = other.black;
+        white = other.white;
+        halfTurns = other.halfTurns;
+        hash = other.hash;
+        blackFives = other.blackFives;
+        whiteFives = other.whiteFives;
+
+        linePatterns = other.linePatterns.clone();
+
+        savedStones = new long[SAVED_LONGS * INITIAL_STACK_DEPTH];
+        savedCodes = new int[SAVED_INTS * INITIAL_STACK_DEPTH];
+        savedCount = 0;
+    }
+
+    /**
+     * Finds the lines which pass through at least one of a set of cells.
+     * @param cells a bitboard of the cells in question
+     * @return the indices in LINES of the matching lines
+     */
+    private static int[] linesThrough(final long cells) {
+        int[] found = new int[NUM_LINES];
+        int count = 0;
+
+        for (int line = 0; line < NUM_LINES; line++) {
+            for (int cell : LINES[line]) {
+                if ((cells & (1L << cell)) != 0) {
+                    found[count++] = line;
+                    break;
+                }
+            }
+        }
+
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Finds the five-in-a-rows which include at least one of a set of cells.
+     * @param cells a bitboard of the cells in question
+     * @return the matching bitboards from FIVE_MASKS
+     */
+    private static long[] fivesThrough(final long cells) {
+        long[] found = new long[NUM_FIVES];
+        int count = 0;
+
+        for (long mask : FIVE_MASKS) {
+            if ((mask & cells) != 0) {
+                found[count++] = mask;
+            }
+        }
+
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Counts the five-in-a-rows completely filled by a set of stones.
+     * @param stones a bitboard of one color's stones
+     * @param masks the five-in-a-rows to check
+     * @return the number of masks whose cells all hold stones
+     */
+    private static int countFives(final long stones, final long[] masks) {
+        int count = 0;
+
+        for (long mask : masks) {
+            if ((stones & mask) == mask) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Finds the empty cells that would complete a five-in-a-row for a set of
+     * stones: those that are the only cell of a five-in-a-row not yet
+     * holding one of the stones.
+     * @param stones a bitboard of one color's stones
+     * @param empty a bitboard of the empty cells
+     * @param masks the five-in-a-rows to check
+     * @return a bitboard of the completing cells
+     */
+    private static long completions(final long stones, final long empty, final long[] masks) {
+        long cells = 0;
+
+        for (long mask : masks) {
+            long missing = mask & ~stones;
+
+            if ((missing & (missing - 1)) == 0 && (missing & empty) != 0) {
+                cells |= missing;
+            }
+        }
+
+        return cells;
+    }
+
+    /**
+     * Moves a square index by one of the board's symmetries.
+     * @param sym the symmetry, 0-7
+     * @param index the index within a square grid, numbered left-to-right,
+     * top-to-bottom
+     * @param width the width of the square grid
+     * @return the index to which the symmetry moves the given index
+     */
+    private static int transform(final int sym, final int index, final int width) {
+        int x = index % width;
+        int y = index / width;
+
+        if (sym >= NUM_ROTATIONS) {
+            x = width - 1 - x;
+        }
+
+        for (int r = 0; r < sym % NUM_ROTATIONS; r++) {
+            int rotatedX = width - 1 - y;
+            y = x;
+            x = rotatedX;
+        }
+
+        return y * width + x;
+    }
+
+    /**
+     * Rotates a 9-bit sub-block pattern a quarter turn clockwise.
+     * @param pattern the pattern to rotate
+     * @return the rotated pattern
+     */
+    private static int rotateClockwise(final int pattern) {
+        int rotated = 0;
+        for (int row = 0; row < QUAD_HEIGHT; row++) {
+            for (int col = 0; col < QUAD_WIDTH; col++) {
+                int source = (QUAD_HEIGHT - 1 - col) * QUAD_WIDTH + row;
+                if ((pattern & (1 << source)) != 0) {
+                    rotated |= 1 << (row * QUAD_WIDTH + col);
+                }
+            }
+        }
+
+        return rotated;
     }
 
     /**
@@ -155,27 +739,63 @@ public class Board {
      * @param dir the direction to rotate the specified quadrant
      */
     public void rotateQuadrant(final int quadrant, final int dir) {
-        curRotation[quadrant] =
-                (byte) ((curRotation[quadrant]
-                         + dir
-                         + curRotation.length)
-                        % curRotation.length);
+        int turns = ((dir % NUM_ROTATIONS) + NUM_ROTATIONS) % NUM_ROTATIONS;
+        if (turns == 0) {
+            return;
+        }
+
+        int offset = QUAD_OFFSETS[quadrant];
+        long[] fives = QUAD_FIVES[quadrant];
+        hash ^= QUAD_ZOBRIST[0][quadrant][quadPattern(black, offset)]
+              ^ QUAD_ZOBRIST[1][quadrant][quadPattern(white, offset)];
+        blackFives -= countFives(black, fives);
+        whiteFives -= countFives(white, fives);
+
+        black = rotateBits(black, quadrant, turns);
+        white = rotateBits(white, quadrant, turns);
+
+        hash ^= QUAD_ZOBRIST[0][quadrant][quadPattern(black, offset)]
+              ^ QUAD_ZOBRIST[1][quadrant][quadPattern(white, offset)];
+        blackFives += countFives(black, fives);
+        whiteFives += countFives(white, fives);
+        updateLines(QUAD_LINES[quadrant]);
     }
 
     /**
-     * Gets the index of the specified location in contents.
-     * @param loc the location to convert to an index
-     * @return the location in the form of a scalar index for contents
+     * Rotates the stones of a single bitboard within a quadrant.
+     * @param bits the bitboard to rotate
+     * @param quadrant the quadrant number to rotate, 0-3
+     * @param turns the number of quarter turns clockwise, 0-3
+     * @return the bitboard with the quadrant rotated
+     */
+    private static long rotateBits(final long bits, final int quadrant, final int turns) {
+        int offset = QUAD_OFFSETS[quadrant];
+        int pattern = quadPattern(bits, offset);
+
+        return (bits & ~QUAD_MASKS[quadrant])
+             | (SPREAD[ROTATED_PATTERNS[turns][pattern]] << offset);
+    }
+
+    /**
+     * Extracts the 9-bit pattern of a sub-block from a bitboard.
+     * @param bits the bitboard to read
+     * @param offset the bit index of the sub-block's top-left cell
+     * @return the sub-block's cells numbered left-to-right, top-to-bottom
      */
-    private int getLocationByteInd(final int[] loc) {
-        int quadX = loc[0] / QUAD_WIDTH;
-        int quadY = loc[1] / QUAD_HEIGHT;
-        int quad = 2 * quadY + quadX;
-        int quadOffset = QUAD_WIDTH * quadX
-                       + QUAD_HEIGHT * BOARD_WIDTH * quadY;
+    private static int quadPattern(final long bits, final int offset) {
+        return (int) (((bits >>> offset) & QUAD_ROW_MASK)
+                    | (((bits >>> (offset + BOARD_WIDTH)) & QUAD_ROW_MASK) << QUAD_WIDTH)
+                    | (((bits >>> (offset + 2 * BOARD_WIDTH)) & QUAD_ROW_MASK) << (2 * QUAD_WIDTH)));
+    }
 
-        return ROTATIONS[curRotation[quad]]
-                [loc[1] * BOARD_WIDTH + loc[0] - quadOffset] + quadOffset;
+    /**
+     * Gets the index of the cell at the specified location.
+     * @param loc the location to convert to an index
+     * @return the location in the form of a scalar index, numbered
+     * left-to-right, top-to-bottom
+     */
+    public static int cellIndex(final int[] loc) {
+        return loc[1] * BOARD_WIDTH + loc[0];
     }
 
     /**
@@ -185,10 +805,181 @@ public class Board {
      * @return a byte representing the contents of the cell
      */
     public byte getLocation(final int[] loc) {
-        int locInd = getLocationByteInd(loc);
+        return getCell(cellIndex(loc));
+    }
+
+    /**
+     * Gets the byte representing the contents of the cell with the given index.
+     * @param cell the index of the cell, numbered left-to-right, top-to-bottom
+     * @return a byte representing the contents of the cell
+     */
+    public byte getCell(final int cell) {
+        long bit = 1L << cell;
+        if ((white & bit) != 0) {
+            return WHITE;
+        }
+        if ((black & bit) != 0) {
+            return BLACK;
+        }
+
+        return EMPTY;
+    }
+
+    /**
+     * Gets the bitboard of the cells holding a given color, one bit per cell
+     * numbered left-to-right, top-to-bottom.
+     * @param color the color of the stones, BLACK or WHITE
+     * @return the bitboard of that color's stones
+     */
+    public long getStones(final byte color) {
+        return (color == WHITE) ? white : black;
+    }
+
+    /**
+     * Finds the empty cells on which a placement by a given color would
+     * complete a five-in-a-row at once, winning before any rotation.
+     * @param color the color placing, BLACK or WHITE
+     * @return a bitboard of the winning cells
+     */
+    public long getWinningCells(final byte color) {
+        return completions(getStones(color), ~(black | white), FIVE_MASKS);
+    }
+
+    /**
+     * Finds the empty cells on which a placement by a given color, followed
+     * by one rotation or none, would complete a five-in-a-row for that color.
+     * Each rotation only affects the five-in-a-rows through its sub-block, so
+     * only those are checked again in the rotated position, and the cells
+     * completing them are rotated back to where the stone must be placed. If
+     * a rotation alone completes one, every empty cell is threatened. The
+     * move may still tie if the rotation completes a five-in-a-row for the
+     * other color too.
+     * @param color the color placing, BLACK or WHITE
+     * @return a bitboard of the threatened cells
+     */
+    public long getThreatCells(final byte color) {
+        long stones = getStones(color);
+        long empty = ~(black | white);
+        long cells = completions(stones, empty, FIVE_MASKS);
+
+        for (int quad = 0; quad < NUM_QUADS; quad++) {
+            for (int turns = 1; turns < NUM_ROTATIONS; turns += 2) {
+                long rotatedStones = rotateBits(stones, quad, turns);
+                if (countFives(rotatedStones, QUAD_FIVES[quad]) > 0) {
+                    return empty & ~(-1L << BOARD_SIZE);
+                }
+
+                long rotated = completions(rotatedStones,
+                                           rotateBits(empty, quad, turns),
+                                           QUAD_FIVES[quad]);
+                cells |= rotateBits(rotated, quad, NUM_ROTATIONS - turns);
+            }
+        }
+
+        return cells;
+    }
+
+    /**
+     * Gets the Zobrist hash of the position, which is updated incrementally
+     * as stones are placed, cleared and rotated.
+     * @param turn the color of the player on-move
+     * @return a 64-bit hash of the stones on the board and the player on-move
+     */
+    public long getHash(final byte turn) {
+        return (turn == WHITE) ? hash ^ WHITE_TO_MOVE : hash;
+    }
+
+    /**
+     * Gets the hash of the position as seen through one of the board's
+     * symmetries, which is the hash the symmetric board would have.
+     * @param sym the symmetry, 0-7, with 0 leaving the board unchanged
+     * @param turn the color of the player on-move
+     * @return a 64-bit hash of the transformed stones and the player on-move
+     */
+    public long getSymmetricHash(final int sym, final byte turn) {
+        long symHash = (turn == WHITE) ? WHITE_TO_MOVE : 0;
+        short[] patterns = SYMMETRY_PATTERNS[sym];
+        int[] quads = SYMMETRY_QUADS[sym];
+
+        for (int quad = 0; quad < NUM_QUADS; quad++) {
+            int offset = QUAD_OFFSETS[quad];
+            symHash ^= QUAD_ZOBRIST[0][quads[quad]][patterns[quadPattern(black, offset)]]
+                     ^ QUAD_ZOBRIST[1][quads[quad]][patterns[quadPattern(white, offset)]];
+        }
+
+        return symHash;
+    }
+
+    /**
+     * Finds the symmetry of the board whose hash is smallest. Every position
+     * related by a symmetry shares the same smallest hash, so it serves as a
+     * canonical key for all of them.
+     * @param turn the color of the player on-move
+     * @return the symmetry, 0-7, that moves the board to its canonical form
+     */
+    public int getCanonicalSymmetry(final byte turn) {
+        int best = 0;
+        long bestHash = getHash(turn);
+
+        for (int sym = 1; sym < NUM_SYMMETRIES; sym++) {
+            long symHash = getSymmetricHash(sym, turn);
+
+            if (symHash < bestHash) {
+                best = sym;
+                bestHash = symHash;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Gets a hash of the position that is the same for every position related
+     * to it by one of the board's symmetries.
+     * @param turn the color of the player on-move
+     * @return the smallest hash of the position over all of the symmetries
+     */
+    public long getCanonicalHash(final byte turn) {
+        return getSymmetricHash(getCanonicalSymmetry(turn), turn);
+    }
+
+    /**
+     * Moves a cell by one of the board's symmetries.
+     * @param sym the symmetry, 0-7
+     * @param cell the index of the cell, numbered left-to-right, top-to-bottom
+     * @return the index of the cell to which the symmetry moves it
+     */
+    public static int transformCell(final int sym, final int cell) {
+        return SYMMETRY_CELLS[sym][cell];
+    }
+
+    /**
+     * Moves a sub-block by one of the board's symmetries.
+     * @param sym the symmetry, 0-7
+     * @param quad the sub-block number, 0-3
+     * @return the sub-block to which the symmetry moves it
+     */
+    public static int transformQuad(final int sym, final int quad) {
+        return SYMMETRY_QUADS[sym][quad];
+    }
 
-        return (byte) (LOC_MASK & (contents[locInd / LOCS_PER_BYTE]
-                       >>> (LOC_SIZE * (locInd % LOCS_PER_BYTE))));
+    /**
+     * Gets whether a symmetry mirrors the board, which reverses the direction
+     * of any rotation.
+     * @param sym the symmetry, 0-7
+     * @return whether the symmetry is a mirror image
+     */
+    public static boolean isReflection(final int sym) {
+        return sym >= NUM_ROTATIONS;
+    }
+
+    /**
+     * Gets the symmetry which undoes a given symmetry.
+     * @param sym the symmetry, 0-7
+     * @return the inverse symmetry
+     */
+    public static int inverseSymmetry(final int sym) {
+        return INVERSE_SYMMETRIES[sym];
     }
 
     @Override
@@ -196,7 +987,7 @@ public class Board {
         StringBuilder sb = new StringBuilder();
         for (int y = 0; y < BOARD_HEIGHT; y++) {
             for (int x = 0; x < BOARD_WIDTH; x++) {
-                byte val = getLocation(new int[] {x, y});
+                byte val = getCell(y * BOARD_WIDTH + x);
                 if (val == WHITE) {
                     sb.append("w|");
                 } else if (val == BLACK) {
@@ -215,6 +1006,86 @@ public class Board {
         return sb.toString();
     }
 
+    /**
+     * Writes the cells of the board on a single line.
+     * @return the 36 cells in row order, as 'b' for black, 'w' for white
+     * and '.' for an empty cell
+     */
+    public String toCells() {
+        StringBuilder sb = new StringBuilder(BOARD_SIZE);
+        for (int cell = 0; cell < BOARD_SIZE; cell++) {
+            byte val = getCell(cell);
+            if (val == WHITE) {
+                sb.append('w');
+            } else if (val == BLACK) {
+                sb.append('b');
+            } else {
+                sb.append('.');
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Sets every cell of the board from a single line written by toCells.
+     * The board is left unchanged if the line is malformed.
+     * @param cells the 36 cells in row order
+     * @return whether the line was well formed
+     */
+    public boolean setCells(final String cells) {
+        if (cells.length() != BOARD_SIZE) {
+            return false;
+        }
+
+        for (int cell = 0; cell < BOARD_SIZE; cell++) {
+            char c = cells.charAt(cell);
+            if (c != 'b' && c != 'w' && c != '.') {
+                return false;
+            }
+        }
+
+        long blackStones = 0;
+        long whiteStones = 0;
+        for (int cell = 0; cell < BOARD_SIZE; cell++) {
+            char c = cells.charAt(cell);
+            if (c == 'w') {
+                whiteStones |= 1L << cell;
+            } else if (c == 'b') {
+                blackStones |= 1L << cell;
+            }
+        }
+
+        setStones(blackStones, whiteStones);
+
+        return true;
+    }
+
+    /**
+     * Sets every cell of the board from the bitboards of both colors, as
+     * given by getStones. Only the cells that change are updated.
+     * @param blackStones the bitboard of the black stones
+     * @param whiteStones the bitboard of the white stones, disjoint from the
+     * black stones
+     */
+    public void setStones(final long blackStones, final long whiteStones) {
+        long changed = (black ^ blackStones) | (white ^ whiteStones);
+
+        while (changed != 0) {
+            int cell = Long.numberOfTrailingZeros(changed);
+            changed &= changed - 1;
+
+            if (getCell(cell) != EMPTY) {
+                clearCell(cell);
+            }
+            if ((whiteStones & (1L << cell)) != 0) {
+                setCell(cell, WHITE);
+            } else if ((blackStones & (1L << cell)) != 0) {
+                setCell(cell, BLACK);
+            }
+        }
+    }
+
     /**
      * Returns a terminal evaluation of the game state, used for evaluating
      * terminal nodes in a minimax search, or determining whether/how the game
@@ -229,48 +1100,418 @@ public class Board {
      * Double.POSITIVE_INFINITY and a certain tie is Double.NaN
      */
     public double evaluation(final double[][] streakScores) {
-        StreakCollector streakCollector = new StreakCollector(NUM_TO_WIN, BOARD_WIDTH, streakScores);
-        
-        for (int y = 0; y < BOARD_HEIGHT; y++) {
-            for (int x = 0; x < BOARD_WIDTH; x++) {
-                streakCollector.addVal(getLocation(new int[] {x, y}));
+        byte result = getResult();
+
+        if (result == WHITE) {
+            return MAX_EVAL;
+        } else if (result == BLACK) {
+            return MIN_EVAL;
+        } else if (result == TIE) {
+            return TIE_EVAL;
+        }
+
+        double score = 0;
+        for (int pattern : linePatterns) {
+            int code = LINE_CODES[pattern];
+            int terms = (code >>> TERM_COUNT_SHIFT) & TERM_COUNT_MASK;
+
+            for (int i = 0; i < terms; i++) {
+                int term = (code >>> (TERMS_SHIFT + TERM_BITS * i)) & TERM_MASK;
+                double weight = streakScores[(term & ~TERM_NEGATIVE) >>> TERM_LENGTH_SHIFT]
+                                            [term & TERM_ACTUAL_MASK];
+
+                if ((term & TERM_NEGATIVE) == 0) {
+                    score += weight;
+                } else {
+                    score -= weight;
+                }
             }
-            streakCollector.finishLine();
-            streakCollector.newLine();
         }
 
-        for (int x = 0; x < BOARD_WIDTH; x++) {
-            for (int y = 0; y < BOARD_HEIGHT; y++) {
-                streakCollector.addVal(getLocation(new int[] {x, y}));
+        return score;
+    }
+
+    /**
+     * Returns the evaluation of an unfinished game in fixed point, the sum
+     * of the scores of its lines' patterns. With the table built by
+     * lineScores, this is the sum of the same scoring terms as
+     * evaluation(double[][]), but with integer weights. Whether the game has
+     * finished is not checked, and the result for a finished game has no
+     * meaning.
+     * @param lineScores the score of each line pattern, as built by
+     * lineScores
+     * @return the evaluation of the game board, with states favoring white
+     * getting positive values and states favoring black negative values
+     */
+    public int evaluation(final int[] lineScores) {
+        int score = 0;
+        for (int pattern : linePatterns) {
+            score += lineScores[pattern];
+        }
+
+        return score;
+    }
+
+    /**
+     * Evaluates every placement of a color's stone on the board at once, as
+     * evaluation(int[]) would after each one, without changing the board.
+     * Since a placement only changes the lines through its cell, and only by
+     * adding a digit to their patterns, each placement's evaluation is the
+     * board's plus a few differences of line pattern scores. Whether a
+     * placement finishes the game is not checked.
+     * @param color the color placing, BLACK or WHITE
+     * @param lineScores the score of each line pattern, as built by
+     * lineScores
+     * @param scores the array to receive, for each empty cell, the evaluation
+     * after placing there. The entries of filled cells are left unchanged.
+     */
+    public void placementEvaluations(final byte color,
+                                     final int[] lineScores,
+                                     final int[] scores) {
+        int base = evaluation(lineScores);
+        int digit = (color == WHITE) ? 2 : 1;
+
+        if (VECTOR_SUMS) {
+            vectorPlacementEvaluations(digit, base, lineScores, scores);
+            return;
+        }
+
+        for (long empty = ~(black | white) & ~(-1L << BOARD_SIZE); empty != 0; empty &= empty - 1) {
+            int cell = Long.numberOfTrailingZeros(empty);
+            int[] lines = CELL_LINES[cell];
+            int[] places = CELL_PLACES[cell];
+            int score = base;
+
+            for (int k = 0; k < lines.length; k++) {
+                int pattern = linePatterns[lines[k]];
+                score += lineScores[pattern + digit * places[k]] - lineScores[pattern];
             }
-            streakCollector.finishLine();
-            streakCollector.newLine();
+
+            scores[cell] = score;
         }
+    }
 
-        for (int[] diagonal : DIAGONALS) {
-            int[] loc = new int[] {diagonal[0], diagonal[1]};
+    /**
+     * Does the work of placementEvaluations with the Vector API, summing the
+     * line pattern score differences of every cell at once.
+     * @param digit the digit the placement adds to the patterns of its lines
+     * @param base the evaluation of the board before the placement
+     * @param lineScores the score of each line pattern
+     * @param scores the array to receive the evaluation of each placement
+     */
+    private void vectorPlacementEvaluations(final int digit,
+                                            final int base,
+                                            final int[] lineScores,
+                                            final int[] scores) {
+        allocateBatch();
+        Arrays.fill(addedPatterns, 0, MAX_CELL_LINES * BOARD_SIZE, 0);
+        Arrays.fill(removedPatterns, 0, MAX_CELL_LINES * BOARD_SIZE, 0);
+        Arrays.fill(batchScores, 0, BOARD_SIZE, base);
 
-            for (int i = 0; i < diagonal[4]; i++) {
-                streakCollector.addVal(getLocation(loc));
+        long empty = ~(black | white) & ~(-1L << BOARD_SIZE);
+        for (long cells = empty; cells != 0; cells &= cells - 1) {
+            int cell = Long.numberOfTrailingZeros(cells);
+            int[] lines = CELL_LINES[cell];
+            int[] places = CELL_PLACES[cell];
 
-                loc[0] += diagonal[2];
-                loc[1] += diagonal[3];
+            for (int k = 0; k < lines.length; k++) {
+                int pattern = linePatterns[lines[k]];
+                removedPatterns[k * BOARD_SIZE + cell] = pattern;
+                addedPatterns[k * BOARD_SIZE + cell] = pattern + digit * places[k];
             }
-            streakCollector.finishLine();
-            streakCollector.newLine();
         }
 
-        double score = streakCollector.getScore();
+        VectorSums.sumDifferences(lineScores,
+                                  addedPatterns,
+                                  removedPatterns,
+                                  MAX_CELL_LINES,
+                                  BOARD_SIZE,
+                                  batchScores);
 
-        if (!Double.isFinite(score)) {
-            return score;
+        for (long cells = empty; cells != 0; cells &= cells - 1) {
+            int cell = Long.numberOfTrailingZeros(cells);
+            scores[cell] = batchScores[cell];
         }
+    }
 
-        if (isFull()) {
-            return TIE_EVAL;
+    /**
+     * Evaluates every move placing a color's stone on a given cell at once,
+     * as evaluation(int[]) would after each one, without changing the
+     * board. The moves differ only in their rotation, so each evaluation is
+     * the placement's plus the differences in the scores of the lines
+     * through the rotated sub-block. Whether a move finishes the game is not
+     * checked.
+     * @param color the color placing, BLACK or WHITE
+     * @param cell the empty cell on which the stone is placed
+     * @param lineScores the score of each line pattern, as built by
+     * lineScores
+     * @param scores the array to receive the evaluation after each move, at
+     * the move's rotation number as given by Move.rotation: twice the
+     * rotated sub-block, plus one if it turns clockwise
+     */
+    public void rotationEvaluations(final byte color,
+                                    final int cell,
+                                    final int[] lineScores,
+                                    final int[] scores) {
+        allocateBatch();
+        long placedBlack = (color == BLACK) ? black | (1L << cell) : black;
+        long placedWhite = (color == WHITE) ? white | (1L << cell) : white;
+
+        int digit = (color == WHITE) ? 2 : 1;
+        int[] cellLines = CELL_LINES[cell];
+        int[] places = CELL_PLACES[cell];
+        int placed = evaluation(lineScores);
+        for (int k = 0; k < cellLines.length; k++) {
+            int pattern = linePatterns[cellLines[k]];
+            placed += lineScores[pattern + digit * places[k]] - lineScores[pattern];
         }
 
-        return score;
+        Arrays.fill(addedPatterns, 0, MAX_QUAD_LINES * CELL_MOVES, 0);
+        Arrays.fill(removedPatterns, 0, MAX_QUAD_LINES * CELL_MOVES, 0);
+        Arrays.fill(batchScores, 0, CELL_MOVES, placed);
+
+        for (int quad = 0; quad < NUM_QUADS; quad++) {
+            int[] lines = QUAD_LINES[quad];
+
+            for (int k = 0; k < lines.length; k++) {
+                int before = linePattern(placedBlack, placedWhite, lines[k]);
+                removedPatterns[k * CELL_MOVES + 2 * quad] = before;
+                removedPatterns[k * CELL_MOVES + 2 * quad + 1] = before;
+            }
+
+            for (int clockwise = 0; clockwise < 2; clockwise++) {
+                int turns = (clockwise == 1) ? 1 : NUM_ROTATIONS - 1;
+                long rotatedBlack = rotateBits(placedBlack, quad, turns);
+                long rotatedWhite = rotateBits(placedWhite, quad, turns);
+
+                for (int k = 0; k < lines.length; k++) {
+                    addedPatterns[k * CELL_MOVES + 2 * quad + clockwise] =
+                            linePattern(rotatedBlack, rotatedWhite, lines[k]);
+                }
+            }
+        }
+
+        if (VECTOR_SUMS) {
+            VectorSums.sumDifferences(lineScores,
+                                      addedPatterns,
+                                      removedPatterns,
+                                      MAX_QUAD_LINES,
+                                      CELL_MOVES,
+                                      batchScores);
+        } else {
+            sumDifferences(lineScores,
+                           addedPatterns,
+                           removedPatterns,
+                           MAX_QUAD_LINES,
+                           CELL_MOVES,
+                           batchScores);
+        }
+
+        System.arraycopy(batchScores, 0, scores, 0, CELL_MOVES);
+    }
+
+    /**
+     * Adds to each evaluation of a batch the score differences of its
+     * changed lines. The patterns are laid out in slots, slot s holding one
+     * pattern per evaluation from index s * width; a slot that an
+     * evaluation does not use has equal added and removed patterns.
+     * VectorSums.sumDifferences does the same with the Vector API.
+     * @param lineScores the score of each line pattern
+     * @param added the pattern each changed line takes on
+     * @param removed the pattern each changed line had before
+     * @param slots the number of slots
+     * @param width the number of evaluations in the batch
+     * @param sums the evaluations, to which the differences are added
+     */
+    static void sumDifferences(final int[] lineScores,
+                               final int[] added,
+                               final int[] removed,
+                               final int slots,
+                               final int width,
+                               final int[] sums) {
+        for (int slot = 0; slot < slots; slot++) {
+            int start = slot * width;
+
+            for (int i = 0; i < width; i++) {
+                sums[i] += lineScores[added[start + i]] - lineScores[removed[start + i]];
+            }
+        }
+    }
+
+    /**
+     * Allocates the arrays used to evaluate batches, if not done already.
+     */
+    private void allocateBatch() {
+        if (batchScores == null) {
+            int length = Math.max(MAX_CELL_LINES * BOARD_SIZE, MAX_QUAD_LINES * CELL_MOVES);
+            addedPatterns = new int[length];
+            removedPatterns = new int[length];
+            batchScores = new int[Math.max(BOARD_SIZE, CELL_MOVES)];
+        }
+    }
+
+    /**
+     * Builds the table of line pattern scores used by evaluation(int[]) from
+     * a set of scoring weights in fixed point. The table must be rebuilt
+     * whenever the weights change.
+     * @param weights the scoring weights in fixed point, shaped like the
+     * streakScores given to evaluation(double[][])
+     * @return the score of each of the LINE_PATTERNS line patterns
+     */
+    public static int[] lineScores(final int[][] weights) {
+        int[] lineScores = new int[LINE_PATTERNS];
+
+        for (int pattern = 0; pattern < LINE_PATTERNS; pattern++) {
+            int code = LINE_CODES[pattern];
+            int terms = (code >>> TERM_COUNT_SHIFT) & TERM_COUNT_MASK;
+
+            for (int i = 0; i < terms; i++) {
+                int term = (code >>> (TERMS_SHIFT + TERM_BITS * i)) & TERM_MASK;
+                int weight = weights[(term & ~TERM_NEGATIVE) >>> TERM_LENGTH_SHIFT]
+                                    [term & TERM_ACTUAL_MASK];
+
+                if ((term & TERM_NEGATIVE) == 0) {
+                    lineScores[pattern] += weight;
+                } else {
+                    lineScores[pattern] -= weight;
+                }
+            }
+        }
+
+        return lineScores;
+    }
+
+    /**
+     * Counts the scoring terms of the board's lines by streak length and
+     * number of filled in cells, white's terms counting one and black's
+     * minus one. The evaluation of an unfinished game is the sum of each
+     * count times its scoring weight, so the counts can stand in for the
+     * board when the weights are being fitted.
+     * @param counts the array to which the counts are added, shaped like the
+     * scoring weights
+     */
+    public void addStreakCounts(final int[][] counts) {
+        for (int pattern : linePatterns) {
+            int code = LINE_CODES[pattern];
+            int terms = (code >>> TERM_COUNT_SHIFT) & TERM_COUNT_MASK;
+
+            for (int i = 0; i < terms; i++) {
+                int term = (code >>> (TERMS_SHIFT + TERM_BITS * i)) & TERM_MASK;
+                int[] row = counts[(term & ~TERM_NEGATIVE) >>> TERM_LENGTH_SHIFT];
+
+                if ((term & TERM_NEGATIVE) == 0) {
+                    row[term & TERM_ACTUAL_MASK]++;
+                } else {
+                    row[term & TERM_ACTUAL_MASK]--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Rescans the given lines, updating their patterns.
+     * @param lines the indices in LINES of the lines to rescan
+     */
+    private void updateLines(final int[] lines) {
+        for (int line : lines) {
+            linePatterns[line] = scanLine(line);
+        }
+    }
+
+    /**
+     * Reads the pattern of a single line from the bitboards.
+     * @param line the index in LINES of the line to scan
+     * @return the pattern of the line, an index into LINE_CODES
+     */
+    private int scanLine(final int line) {
+        return linePattern(black, white, line);
+    }
+
+    /**
+     * Reads the pattern of a single line from a pair of bitboards.
+     * @param black the bitboard of black stones
+     * @param white the bitboard of white stones
+     * @param line the index in LINES of the line to scan
+     * @return the pattern of the line, an index into LINE_CODES
+     */
+    private static int linePattern(final long black, final long white, final int line) {
+        int[] cells = LINES[line];
+        int pattern = 0;
+
+        for (int i = cells.length - 1; i >= 0; i--) {
+            int cell = cells[i];
+            pattern = pattern * CELL_VALUES
+                    + (int) ((black >>> cell) & 1) + 2 * (int) ((white >>> cell) & 1);
+        }
+
+        return (cells.length == BOARD_WIDTH) ? pattern : pattern + LONG_LINE_PATTERNS;
+    }
+
+    /**
+     * Pushes the current contents of the board onto the undo stack.
+     */
+    public void saveState() {
+        if (SAVED_LONGS * (savedCount + 1) > savedStones.length) {
+            savedStones = Arrays.copyOf(savedStones, 2 * savedStones.length);
+            savedCodes = Arrays.copyOf(savedCodes, 2 * savedCodes.length);
+        }
+
+        int stoneInd = SAVED_LONGS * savedCount;
+        savedStones[stoneInd] = black;
+        savedStones[stoneInd + 1] = white;
+        savedStones[stoneInd + 2] = hash;
+
+        int codeInd = SAVED_INTS * savedCount;
+        System.arraycopy(linePatterns, 0, savedCodes, codeInd, NUM_LINES);
+        savedCodes[codeInd + NUM_LINES] = halfTurns;
+        savedCodes[codeInd + NUM_LINES + 1] = blackFives;
+        savedCodes[codeInd + NUM_LINES + 2] = whiteFives;
+
+        savedCount++;
+    }
+
+    /**
+     * Pops the most recently saved contents of the board off the undo stack,
+     * undoing every change made since the matching call to saveState.
+     */
+    public void restoreState() {
+        savedCount--;
+
+        int stoneInd = SAVED_LONGS * savedCount;
+        black = savedStones[stoneInd];
+        white = savedStones[stoneInd + 1];
+        hash = savedStones[stoneInd + 2];
+
+        int codeInd = SAVED_INTS * savedCount;
+        System.arraycopy(savedCodes, codeInd, linePatterns, 0, NUM_LINES);
+        halfTurns = savedCodes[codeInd + NUM_LINES];
+        blackFives = savedCodes[codeInd + NUM_LINES + 1];
+        whiteFives = savedCodes[codeInd + NUM_LINES + 2];
+    }
+
+    /**
+     * Gets the outcome of the game on the board so far. Since only the lines
+     * through a changed cell or sub-block are checked as the board changes,
+     * this takes constant time.
+     * @return WHITE or BLACK if only that color has five in a row, TIE if
+     * both colors do or the board is full, or UNFINISHED otherwise
+     */
+    public byte getResult() {
+        if (whiteFives > 0) {
+            return (blackFives > 0) ? TIE : WHITE;
+        } else if (blackFives > 0) {
+            return BLACK;
+        }
+
+        return isFull() ? TIE : UNFINISHED;
+    }
+
+    /**
+     * Gets the number of empty cells left on the board.
+     * @return the number of empty cells
+     */
+    public int getEmptyCount() {
+        return BOARD_SIZE - halfTurns;
     }
 
     /**
@@ -287,13 +1528,26 @@ public class Board {
      * @param val the color to set
      */
     public void setLocation(final int[] loc, final byte val) {
-        int locInd = getLocationByteInd(loc);
-
-        int byteInd = locInd / LOCS_PER_BYTE;
-        int shift = LOC_SIZE * (locInd % LOCS_PER_BYTE);
+        setCell(cellIndex(loc), val);
+    }
 
-        contents[byteInd] |= val << shift;
+    /**
+     * Sets the cell with the given index to a given, non-empty color
+     * @param cell the index of the cell, numbered left-to-right, top-to-bottom
+     * @param val the color to set
+     */
+    public void setCell(final int cell, final byte val) {
+        if (val == WHITE) {
+            white |= 1L << cell;
+            hash ^= ZOBRIST[1][cell];
+            whiteFives += countFives(white, CELL_FIVES[cell]);
+        } else {
+            black |= 1L << cell;
+            hash ^= ZOBRIST[0][cell];
+            blackFives += countFives(black, CELL_FIVES[cell]);
+        }
         halfTurns++;
+        updateLines(CELL_LINES[cell]);
     }
 
     /**
@@ -301,13 +1555,28 @@ public class Board {
      * @param loc the location to clear
      */
     public void clearLocation(final int[] loc) {
-        int locInd = getLocationByteInd(loc);
+        clearCell(cellIndex(loc));
+    }
 
-        int byteInd = locInd / LOCS_PER_BYTE;
-        int shift = LOC_SIZE * (locInd % LOCS_PER_BYTE);
+    /**
+     * Sets the cell with the given index to empty
+     * @param cell the index of the cell, numbered left-to-right, top-to-bottom
+     */
+    public void clearCell(final int cell) {
+        long bit = 1L << cell;
+        if ((white & bit) != 0) {
+            hash ^= ZOBRIST[1][cell];
+            whiteFives -= countFives(white, CELL_FIVES[cell]);
+        } else if ((black & bit) != 0) {
+            hash ^= ZOBRIST[0][cell];
+            blackFives -= countFives(black, CELL_FIVES[cell]);
+        }
 
-        contents[byteInd] &= ~(LOC_MASK << shift);
+        long keep = ~bit;
+        black &= keep;
+        white &= keep;
         halfTurns--;
+        updateLines(CELL_LINES[cell]);
     }
 
     /**
@@ -321,22 +1590,37 @@ public class Board {
      * degrees clockwise
      */
     public void move(byte turn, int[] loc, int quad, boolean rot) {
-        setLocation(loc, turn);
+        move(turn, cellIndex(loc), quad, rot);
+    }
 
-        if (!Double.isInfinite(evaluation(new double[2][6])) && quad != -1) {
+    /**
+     * Performs a full move, comprised of placing a color and rotating
+     * if the placing step does not result in a win.
+     * @param turn the color on-move
+     * @param cell the index of the cell at which the color is placed
+     * @param quad the number of the quad to rotate, or -1 if no rotation
+     * is to be performed
+     * @param rot the direction to rotate the quad, with 1 unit being 90
+     * degrees clockwise
+     */
+    public void move(byte turn, int cell, int quad, boolean rot) {
+        setCell(cell, turn);
+
+        byte result = getResult();
+        if (result != WHITE && result != BLACK && quad != -1) {
             rotateQuadrant(quad, rot ? 1 : -1);
         }
     }
     
     /**
-     * A class which defines a "streak collector" which accumulates possible
-     * locations of a win for either player into a score, given the scoring
-     * weights.
+     * A class which defines a "streak collector" which records the possible
+     * locations of a win for either player along a line as a streak code,
+     * which can later be scored given the scoring weights.
      * @author Neil Hulbert
      * @version 1.0
      *
      */
-    private class StreakCollector {
+    private static class StreakCollector {
         /**
          * The minimum possible streak.
          */
@@ -345,10 +1629,6 @@ public class Board {
          * The maximum possible streak.
          */
         private final int MAX_STREAK;
-        /**
-         * The weights with which to score streaks.
-         */
-        private final double[][] streakScores;
         /**
          * The current streak being tracked.
          */
@@ -375,30 +1655,22 @@ public class Board {
          */
         private int count;
         /**
-         * The accumulated score for all lines.
-         */
-        private double score;
-        /**
-         * Whether the board is certain to be in a completed state.
+         * The streak code accumulated for the current line: the five-in-a-row
+         * flags, the number of scoring terms, and the scoring terms in the
+         * order they were found.
          */
-        boolean gameCompleted;
+        private int code;
 
         /**
          * The constructor which initializes an empty Streak Collector.
          * @param minStreak the minimum possible streak to consider.
          * @param maxStreak the maximum possible streak to consider.
-         * @param streakScores the weights of the different kinds of streaks.
          */
-        StreakCollector(final int minStreak, final int maxStreak, double[][] streakScores) {
+        StreakCollector(final int minStreak, final int maxStreak) {
             MIN_STREAK = minStreak;
             MAX_STREAK = maxStreak;
-            this.streakScores = streakScores;
 
-            score = 0;
-            
             newLine();
-            
-            gameCompleted = false;
         }
 
         /**
@@ -416,13 +1688,7 @@ public class Board {
                 actualInARow++;
                 
                 if (actualInARow == NUM_TO_WIN) {
-                    double newScore = (val == WHITE) ? MAX_EVAL : MIN_EVAL;
-                    if (!gameCompleted) {
-                        score = newScore;
-                        gameCompleted = true;
-                    } else if (newScore != score){
-                        score = TIE_EVAL;
-                    }
+                    code |= (val == WHITE) ? WHITE_FIVE : BLACK_FIVE;
                 }
                 
                 firstEmpty = count + 1;
@@ -448,15 +1714,15 @@ public class Board {
         }
 
         /**
-         * Gets the current score accumulated.
-         * @return the current score accumulated
+         * Gets the streak code accumulated for the current line.
+         * @return the current streak code
          */
-        public double getScore(){
-            return score;
+        public int getCode(){
+            return code;
         }
 
         /**
-         * Partially resets the streak collector for a new line of input.
+         * Resets the streak collector for a new line of input.
          */
         public void newLine() {
             curStreak = 0;
@@ -465,23 +1731,29 @@ public class Board {
             prev = EMPTY;
             firstEmpty = 0;
             count = 0;
+            code = 0;
         }
         
         /**
-         * Updates the score based on a newly completed streak.
+         * Records a scoring term for a newly completed streak. Once a line
+         * holds five in a row its score no longer matters, so no further
+         * terms are recorded.
          * @param isWhite a boolean representing the color of the streak
          * @param streakLength the length of the streak to add
          * @param actual the number of filled in cells in the streak
          */
         private void updateScore(final boolean isWhite, final int streakLength, final int actual) {
-            if (!gameCompleted && streakLength >= MIN_STREAK
+            if ((code & FIVES) == 0 && streakLength >= MIN_STREAK
                     && streakLength <= MAX_STREAK) {
+                int terms = (code >>> TERM_COUNT_SHIFT) & TERM_COUNT_MASK;
+                int term = ((streakLength - MIN_STREAK) << TERM_LENGTH_SHIFT) | actual;
 
-                if (isWhite) {
-                    score += streakScores[streakLength - MIN_STREAK][actual];
-                } else {
-                    score -= streakScores[streakLength - MIN_STREAK][actual];
+                if (!isWhite) {
+                    term |= TERM_NEGATIVE;
                 }
+
+                code += 1 << TERM_COUNT_SHIFT;
+                code |= term << (TERMS_SHIFT + TERM_BITS * terms);
             }
         }
     }
@@ -0,0 +1,714 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Solves positions with few empty cells exactly. Positions are scored only
+ * as won, drawn or lost, a win scoring more the sooner it comes and a loss
+ * the later it comes, so the solver plays the fastest win and the slowest
+ * loss. The moves at the root are split between threads, which share the
+ * solver's own transposition table. A solve may be given a condition under
+ * which it is abandoned, such as a deadline passing.
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+public class EndgameSolver {
+    /**
+     * The score of a win at the root, from which the number of plies until
+     * the win is subtracted. Scores are from the point of view of the player
+     * on-move.
+     */
+    private static final int WIN_SCORE = Board.BOARD_SIZE + 1;
+    /**
+     * The greatest distance from the root to any node, since every move fills
+     * a cell.
+     */
+    private static final int MAX_PLY = Board.BOARD_SIZE + 1;
+    /**
+     * The history score above which every history score is halved.
+     */
+    private static final int HISTORY_LIMIT = 1 << 20;
+    /**
+     * The number of nodes each thread visits between checks of the abort
+     * condition, less one. Must be one less than a power of two.
+     */
+    private static final int ABORT_CHECK_MASK = 0x3FF;
+
+    /**
+     * The outcome of a solved position along with the move that achieves it.
+     */
+    public static class Solution {
+        /**
+         * The color that wins with best play, or Board.TIE.
+         */
+        private final byte winner;
+        /**
+         * The number of plies until the game is won, or 0 for a draw.
+         */
+        private final int plies;
+        /**
+         * The packed best move, or Move.NONE if the game is already over.
+         */
+        private final int move;
+
+        /**
+         * Constructs a solution.
+         * @param winner the color that wins with best play, or Board.TIE
+         * @param plies the number of plies until the game is won
+         * @param move the packed best move
+         */
+        Solution(final byte winner, final int plies, final int move) {
+            this.winner = winner;
+            this.plies = plies;
+            this.move = move;
+        }
+
+        /**
+         * Gets the color that wins with best play.
+         * @return Board.BLACK, Board.WHITE or Board.TIE
+         */
+        public byte getWinner() {
+            return winner;
+        }
+
+        /**
+         * Gets the number of plies until the game is won with best play,
+         * counting the best move itself.
+         * @return the number of plies, or 0 for a draw
+         */
+        public int getPlies() {
+            return plies;
+        }
+
+        /**
+         * Gets the best move.
+         * @return the packed move, or Move.NONE if the game is already over
+         */
+        public int getMove() {
+            return move;
+        }
+
+        /**
+         * Converts the solution into the evaluation and move recommendation
+         * a Search would give. A quicker win has a larger terminal depth.
+         * @param board the board state that was solved
+         * @return the evaluation and move recommendation
+         */
+        public NodeEval toNodeEval(final Board board) {
+            double eval = Board.TIE_EVAL;
+            if (winner == Board.WHITE) {
+                eval = Board.MAX_EVAL;
+            } else if (winner == Board.BLACK) {
+                eval = Board.MIN_EVAL;
+            }
+
+            NodeEval result = new NodeEval(eval, board.getEmptyCount() - plies, null, 0, 0);
+            Move.toNodeEval(move, result);
+
+            return result;
+        }
+    }
+
+    /**
+     * The table of solved positions, shared by the threads of a solve and
+     * kept between solves.
+     */
+    private final TranspositionTable table;
+    /**
+     * The number of threads among which the root moves are split.
+     */
+    private final int threadCount;
+    /**
+     * The per-thread searches, one per thread.
+     */
+    private final Worker[] workers;
+    /**
+     * The threads on which the workers run, or null if none have been
+     * needed yet.
+     */
+    private ExecutorService pool;
+    /**
+     * The best score found so far at the root of the current solve.
+     */
+    private int bestScore;
+    /**
+     * The move with the best score found so far at the root.
+     */
+    private int bestMove;
+    /**
+     * The condition under which the current solve is abandoned.
+     */
+    private BooleanSupplier abortCondition;
+    /**
+     * Whether the current solve has been abandoned partway through.
+     */
+    private volatile boolean aborted;
+
+    /**
+     * Constructs a solver with a transposition table of the default size.
+     * @param threads the number of threads among which to split the root
+     * moves, at least 1
+     */
+    public EndgameSolver(final int threads) {
+        this(threads, TranspositionTable.DEFAULT_ENTRIES);
+    }
+
+    /**
+     * Constructs a solver.
+     * @param threads the number of threads among which to split the root
+     * moves, at least 1
+     * @param tableEntries the number of entries in the solver's
+     * transposition table
+     */
+    public EndgameSolver(final int threads, final int tableEntries) {
+        threadCount = Math.max(threads, 1);
+        table = new TranspositionTable(tableEntries);
+        workers = new Worker[threadCount];
+
+        for (int i = 0; i < threadCount; i++) {
+            workers[i] = new Worker();
+        }
+    }
+
+    /**
+     * Gets the number of threads among which the root moves are split.
+     * @return the number of threads
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Shuts down the threads the solver has started. The solver may still
+     * be used afterwards, starting new threads as needed.
+     */
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /**
+     * Gets the number of nodes visited by the last solve.
+     * @return the number of nodes
+     */
+    public long getNodeCount() {
+        long nodes = 0;
+
+        for (Worker worker : workers) {
+            nodes += worker.nodes;
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Solves a position.
+     * @param board the board state to solve, which is left unchanged
+     * @param turn the color of the player on-move
+     * @return the outcome with best play and the move that achieves it
+     */
+    public Solution solve(final Board board, final byte turn) {
+        return solve(board, turn, () -> false);
+    }
+
+    /**
+     * Solves a position unless a condition becomes true first. The
+     * condition is checked every few thousand nodes by each thread, so it
+     * should be cheap and safe to call from any thread.
+     * @param board the board state to solve, which is left unchanged
+     * @param turn the color of the player on-move
+     * @param abortCondition the condition under which the solve is abandoned
+     * @return the outcome with best play and the move that achieves it, or
+     * null if the solve was abandoned
+     */
+    public Solution solve(final Board board, final byte turn, final BooleanSupplier abortCondition) {
+        this.abortCondition = abortCondition;
+        aborted = false;
+        table.newSearch();
+        for (Worker worker : workers) {
+            worker.nodes = 0;
+        }
+
+        byte result = board.getResult();
+        if (result != Board.UNFINISHED) {
+            return new Solution(result, 0, Move.NONE);
+        }
+
+        Worker root = workers[0];
+        int numMoves = root.generateMoves(board, turn, 0);
+
+        bestScore = -WIN_SCORE;
+        bestMove = Move.NONE;
+
+        if (root.immediateScore != -WIN_SCORE) {
+            bestScore = root.immediateScore;
+            bestMove = root.immediateMove;
+        }
+
+        int[] rootMoves = new int[numMoves];
+        for (int i = 0; i < numMoves; i++) {
+            rootMoves[i] = selectMove(root.moveLists[0], root.moveScores[0], i, numMoves);
+        }
+
+        if (bestScore < WIN_SCORE - 1) {
+            if (threadCount == 1 || numMoves <= 1) {
+                searchRootMoves(root, board, turn, rootMoves, new AtomicInteger());
+            } else {
+                splitRootMoves(board, turn, rootMoves);
+            }
+        }
+
+        if (aborted) {
+            return null;
+        }
+
+        byte opponent = Board.oppositeColor(turn);
+        if (bestScore > 0) {
+            return new Solution(turn, WIN_SCORE - bestScore, bestMove);
+        } else if (bestScore < 0) {
+            return new Solution(opponent, WIN_SCORE + bestScore, bestMove);
+        }
+
+        return new Solution(Board.TIE, 0, bestMove);
+    }
+
+    /**
+     * Searches the root moves on every thread, each with its own copy of the
+     * board.
+     * @param board the board state to solve
+     * @param turn the color of the player on-move
+     * @param rootMoves the moves to search
+     */
+    private void splitRootMoves(final Board board, final byte turn, final int[] rootMoves) {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(threadCount, runnable -> {
+                Thread thread = new Thread(runnable, "endgame-solver");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        List<Future<?>> running = new ArrayList<>();
+
+        for (Worker worker : workers) {
+            Board copy = new Board(board);
+            running.add(pool.submit(() -> searchRootMoves(worker, copy, turn, rootMoves, next)));
+        }
+
+        for (Future<?> future : running) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Searches root moves until none are left, taking them one at a time
+     * from a shared counter. Each move is searched with a window raised to
+     * the best score found by any thread so far.
+     * @param worker the worker that searches
+     * @param board the worker's board state
+     * @param turn the color of the player on-move
+     * @param rootMoves the moves to search
+     * @param next the index of the next move to take
+     */
+    private void searchRootMoves(final Worker worker,
+                                 final Board board,
+                                 final byte turn,
+                                 final int[] rootMoves,
+                                 final AtomicInteger next) {
+        byte opponent = Board.oppositeColor(turn);
+
+        for (int i = next.getAndIncrement(); i < rootMoves.length; i = next.getAndIncrement()) {
+            int move = rootMoves[i];
+            int alpha = currentBest();
+
+            if (alpha >= WIN_SCORE - 1) {
+                return;
+            }
+
+            board.saveState();
+            Move.play(board, turn, move);
+            int score = -worker.negamax(board, opponent, 1, -WIN_SCORE, -alpha);
+            board.restoreState();
+
+            if (aborted) {
+                return;
+            }
+
+            offer(score, move);
+        }
+    }
+
+    /**
+     * Gets the best score found so far at the root.
+     * @return the best score
+     */
+    private synchronized int currentBest() {
+        return bestScore;
+    }
+
+    /**
+     * Records the score of a root move if it is the best so far.
+     * @param score the score of the move
+     * @param move the packed move
+     */
+    private synchronized void offer(final int score, final int move) {
+        if (score > bestScore || bestMove == Move.NONE) {
+            bestScore = score;
+            bestMove = move;
+        }
+    }
+
+    /**
+     * The state of a single thread's search.
+     */
+    private class Worker {
+        /**
+         * The moves left to search from the node at each ply.
+         */
+        private final int[][] moveLists;
+        /**
+         * The ordering scores of the moves in moveLists.
+         */
+        private final int[][] moveScores;
+        /**
+         * The canonical hashes of the children already generated from the
+         * node at each ply.
+         */
+        private final KeySet[] childKeys;
+        /**
+         * The history table, indexed by cell and then by rotation.
+         */
+        private final int[][] history;
+        /**
+         * The best score among the moves that ended the game, found by the
+         * last call to generateMoves.
+         */
+        private int immediateScore;
+        /**
+         * The move with immediateScore.
+         */
+        private int immediateMove;
+        /**
+         * The number of nodes visited.
+         */
+        private long nodes;
+
+        /**
+         * Constructs a worker.
+         */
+        Worker() {
+            moveLists = new int[MAX_PLY][Board.BOARD_SIZE * Move.NUM_ROTATIONS];
+            moveScores = new int[MAX_PLY][Board.BOARD_SIZE * Move.NUM_ROTATIONS];
+            childKeys = new KeySet[MAX_PLY];
+            for (int i = 0; i < MAX_PLY; i++) {
+                childKeys[i] = new KeySet();
+            }
+            history = new int[Board.BOARD_SIZE][Move.NUM_ROTATIONS];
+        }
+
+        /**
+         * Solves a node by negamax alpha-beta search. Once the solve is
+         * abandoned, nodes return at once without storing their scores.
+         * @param board the board state
+         * @param turn the color of the player on-move
+         * @param ply the distance of the node from the root
+         * @param alpha the alpha parameter, from the on-move player's view
+         * @param beta the beta parameter, from the on-move player's view
+         * @return the score of the node from the on-move player's view
+         */
+        int negamax(final Board board, final byte turn, final int ply, int alpha, int beta) {
+            nodes++;
+
+            if (aborted
+                    || ((nodes & ABORT_CHECK_MASK) == 0 && abortCondition.getAsBoolean())) {
+                aborted = true;
+                return 0;
+            }
+
+            byte result = board.getResult();
+            if (result != Board.UNFINISHED) {
+                if (result == Board.TIE) {
+                    return 0;
+                }
+
+                return (result == turn) ? WIN_SCORE - ply : -(WIN_SCORE - ply);
+            }
+
+            alpha = Math.max(alpha, -(WIN_SCORE - ply - 1));
+            beta = Math.min(beta, WIN_SCORE - ply - 1);
+            if (alpha >= beta) {
+                return alpha;
+            }
+
+            int sym = board.getCanonicalSymmetry(turn);
+            long key = board.getSymmetricHash(sym, turn);
+            int hashMove = Move.NONE;
+
+            long data = table.probe(key);
+            if (data != 0) {
+                int stored = fromTable(TranspositionTable.score(data), ply);
+                int bound = TranspositionTable.bound(data);
+
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER_BOUND && stored >= beta)
+                        || (bound == TranspositionTable.UPPER_BOUND && stored <= alpha)) {
+                    return stored;
+                }
+
+                hashMove = Move.transform(TranspositionTable.move(data), Board.inverseSymmetry(sym));
+            }
+
+            int alphaOrig = alpha;
+            int numMoves = generateMoves(board, turn, ply);
+            int best = immediateScore;
+            int bestMove = immediateMove;
+
+            if (best >= beta || best == WIN_SCORE - ply - 1) {
+                store(key, sym, ply, board.getEmptyCount(), best, alphaOrig, beta, bestMove);
+                return best;
+            }
+            alpha = Math.max(alpha, best);
+
+            int[] moves = moveLists[ply];
+            int[] scores = moveScores[ply];
+            for (int i = 0; i < numMoves; i++) {
+                if (moves[i] == hashMove) {
+                    scores[i] = Integer.MAX_VALUE;
+                }
+            }
+
+            byte opponent = Board.oppositeColor(turn);
+
+            for (int i = 0; i < numMoves; i++) {
+                int move = selectMove(moves, scores, i, numMoves);
+
+                board.saveState();
+                Move.play(board, turn, move);
+                int score = -negamax(board, opponent, ply + 1, -beta, -alpha);
+                board.restoreState();
+
+                if (aborted) {
+                    return 0;
+                }
+
+                if (score > best) {
+                    best = score;
+                    bestMove = move;
+                    alpha = Math.max(alpha, score);
+                }
+
+                if (alpha >= beta) {
+                    int[] cellHistory = history[Move.cell(move)];
+                    int rotation = Move.rotation(move);
+                    cellHistory[rotation] += board.getEmptyCount();
+                    if (cellHistory[rotation] > HISTORY_LIMIT) {
+                        for (int[] row : history) {
+                            for (int r = 0; r < row.length; r++) {
+                                row[r] /= 2;
+                            }
+                        }
+                    }
+                    break;
+                }
+            }
+
+            store(key, sym, ply, board.getEmptyCount(), best, alphaOrig, beta, bestMove);
+
+            return best;
+        }
+
+        /**
+         * Lists the moves from a node that leave the game unfinished, one per
+         * distinct child, ordered by the history table. Moves that finish
+         * the game are scored on the spot instead, the best of them being
+         * left in immediateScore and immediateMove. A winning move is
+         * returned alone, since no move can do better.
+         * @param board the board state
+         * @param turn the color of the player on-move
+         * @param ply the distance of the node from the root
+         * @return the number of moves listed in moveLists[ply]
+         */
+        int generateMoves(final Board board, final byte turn, final int ply) {
+            int[] moves = moveLists[ply];
+            int[] scores = moveScores[ply];
+            KeySet seen = childKeys[ply];
+            byte opponent = Board.oppositeColor(turn);
+            int winScore = WIN_SCORE - ply - 1;
+            int numMoves = 0;
+
+            seen.clear();
+            immediateScore = -WIN_SCORE;
+            immediateMove = Move.NONE;
+
+            for (int cell = 0; cell < Board.BOARD_SIZE; cell++) {
+                if (board.getCell(cell) != Board.EMPTY) {
+                    continue;
+                }
+
+                board.saveState();
+                board.setCell(cell, turn);
+
+                if (board.getResult() == turn) {
+                    board.restoreState();
+                    immediateScore = winScore;
+                    immediateMove = Move.of(cell, Move.NO_ROTATION, false);
+
+                    return 0;
+                }
+
+                for (int rotation = 0; rotation < Move.NUM_ROTATIONS; rotation++) {
+                    int move = Move.ofRotation(cell, rotation);
+
+                    board.saveState();
+                    board.rotateQuadrant(Move.quad(move), Move.direction(move));
+                    byte result = board.getResult();
+                    boolean fresh = seen.add(board.getCanonicalHash(opponent));
+                    board.restoreState();
+
+                    if (result == turn) {
+                        board.restoreState();
+                        immediateScore = winScore;
+                        immediateMove = move;
+
+                        return 0;
+                    }
+
+                    if (!fresh) {
+                        continue;
+                    }
+
+                    if (result == Board.UNFINISHED) {
+                        moves[numMoves] = move;
+                        scores[numMoves] = history[cell][rotation];
+                        numMoves++;
+                    } else {
+                        int score = (result == Board.TIE) ? 0 : -winScore;
+                        if (score > immediateScore) {
+                            immediateScore = score;
+                            immediateMove = move;
+                        }
+                    }
+                }
+
+                board.restoreState();
+            }
+
+            return numMoves;
+        }
+
+        /**
+         * Stores the score of a solved node in the transposition table.
+         * @param key the canonical hash of the position
+         * @param sym the symmetry that moves the position to its canonical form
+         * @param ply the distance of the node from the root
+         * @param empty the number of empty cells at the node
+         * @param score the score found for the node
+         * @param alpha the alpha parameter with which the node was searched
+         * @param beta the beta parameter with which the node was searched
+         * @param move the best move found for the node
+         */
+        private void store(final long key,
+                           final int sym,
+                           final int ply,
+                           final int empty,
+                           final int score,
+                           final int alpha,
+                           final int beta,
+                           final int move) {
+            int bound = TranspositionTable.EXACT;
+            if (score >= beta) {
+                bound = TranspositionTable.LOWER_BOUND;
+            } else if (score <= alpha) {
+                bound = TranspositionTable.UPPER_BOUND;
+            }
+
+            table.store(key, empty, bound, toTable(score, ply), Move.transform(move, sym));
+        }
+    }
+
+    /**
+     * Moves the highest-scoring of the moves not yet tried into place.
+     * @param moves the moves of the node
+     * @param scores the ordering scores of the moves
+     * @param index the number of moves already tried
+     * @param numMoves the number of moves of the node
+     * @return the next move to try
+     */
+    private static int selectMove(final int[] moves,
+                                  final int[] scores,
+                                  final int index,
+                                  final int numMoves) {
+        int bestIndex = index;
+
+        for (int i = index + 1; i < numMoves; i++) {
+            if (scores[i] > scores[bestIndex]) {
+                bestIndex = i;
+            }
+        }
+
+        int move = moves[bestIndex];
+        int score = scores[bestIndex];
+        moves[bestIndex] = moves[index];
+        scores[bestIndex] = scores[index];
+        moves[index] = move;
+        scores[index] = score;
+
+        return move;
+    }
+
+    /**
+     * Converts a score relative to the root into one relative to the node,
+     * for storing in the transposition table.
+     * @param score the score relative to the root
+     * @param ply the distance of the node from the root
+     * @return the score as though the node were the root
+     */
+    private static int toTable(final int score, final int ply) {
+        if (score > 0) {
+            return score + ply;
+        } else if (score < 0) {
+            return score - ply;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Converts a score stored in the transposition table into one relative
+     * to the root.
+     * @param score the score as though the node were the root
+     * @param ply the distance of the node from the root
+     * @return the score relative to the root
+     */
+    private static int fromTable(final int score, final int ply) {
+        if (score > 0) {
+            return score - ply;
+        } else if (score < 0) {
+            return score + ply;
+        }
+
+        return 0;
+    }
+}
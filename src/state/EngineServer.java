@@ -0,0 +1,70 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The entry-point class for driving the engine from other programs over the
+ * line-based protocol of EngineSession. With no arguments a single session
+ * runs over standard input and output. Given a port, the server instead
+ * listens on that port of the local machine and runs one session per
+ * connection, all in the same JVM, for as long as the connection stays open.
+ * <p>
+ * Usage: java state.EngineServer [port]
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+public class EngineServer {
+    /**
+     * The number of transposition table entries of each network session,
+     * smaller than the default since many sessions may be open at once.
+     */
+    private static final int SESSION_TABLE_ENTRIES = 1 << 18;
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            new EngineSession(new InputStreamReader(System.in, StandardCharsets.UTF_8),
+                              new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+                              TranspositionTable.DEFAULT_ENTRIES).run();
+            return;
+        }
+
+        int port = Integer.parseInt(args[0]);
+        ExecutorService sessions = Executors.newCachedThreadPool();
+
+        try (ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+            System.out.println("Listening on " + server.getLocalSocketAddress());
+
+            while (true) {
+                Socket socket = server.accept();
+
+                sessions.submit(() -> {
+                    try (Socket client = socket) {
+                        new EngineSession(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8),
+                                          new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8),
+                                          SESSION_TABLE_ENTRIES).run();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            sessions.shutdown();
+        }
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A single client's conversation with the engine over a line-based text
+ * protocol. The session keeps one position and one Search for its whole
+ * life, so that the search's transposition table and move ordering tables
+ * stay warm from one request to the next. Searches run on the session's own
+ * thread, leaving the session free to read a stop command meanwhile.
+ * <p>
+ * Commands, one per line:
+ * <ul>
+ * <li>isready: replies "readyok".</li>
+ * <li>newgame: empties the board, with black to move.</li>
+ * <li>position startpos [b|w] [moves m...]: the empty board with the given
+ * color to move first, black if left out, followed by the given moves.</li>
+ * <li>position cells c b|w [moves m...]: the 36 cells c in row order as 'b',
+ * 'w' or '.', with the given color to move, followed by the given moves.</li>
+ * <li>moves m...: plays the given moves on the current position.</li>
+ * <li>go [depth n] [time ms] [nodes n]: searches the current position and
+ * replies "info depth d score s nodes n time ms" then "bestmove m", or
+ * "bestmove none" if the game is over. With no limits the search runs until
+ * stopped.</li>
+ * <li>stop: ends the running search early.</li>
+ * <li>eval: replies "eval s" with the static evaluation of the position.</li>
+ * <li>setoption threads|endgame|quiescence|lmr|futility|research|book
+ * value: sets the number of search threads, the endgame solver's empty-cell
+ * cutoff, the plies of forcing moves searched past the depth limit, the
+ * children searched before late move reductions, the futility margin,
+ * whether reduced children that fail high are searched again (0 or 1) or
+ * the opening book.</li>
+ * <li>quit: ends the session.</li>
+ * </ul>
+ * The newgame, position, moves, go, eval and setoption commands end a running
+ * search first, which still replies with the best move it found.
+ * Moves are written as in the console front-end, "block/cell quadDir", or
+ * "block/cell" alone for a winning placement. Scores are from white's point
+ * of view, a finished or proven game scoring "white", "black" or "tie".
+ * Anything that cannot be carried out is answered with "error" and a reason.
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+public class EngineSession implements Runnable {
+    /**
+     * The scoring weights used by every session.
+     */
+    private static final double[][] SCORES = PentagoMain.DEFAULT_SCORES;
+    /**
+     * The number of nanoseconds in a millisecond.
+     */
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /**
+     * The client's commands.
+     */
+    private final BufferedReader in;
+    /**
+     * The replies to the client.
+     */
+    private final PrintWriter out;
+    /**
+     * The search kept for the whole session.
+     */
+    private final Search search;
+    /**
+     * The thread on which searches run.
+     */
+    private final ExecutorService searcher;
+    /**
+     * The running or most recent search, or null if none has been started.
+     */
+    private Future<?> running;
+    /**
+     * The current position.
+     */
+    private Board board;
+    /**
+     * The color on-move in the current position.
+     */
+    private byte turn;
+
+    /**
+     * Constructs a session.
+     * @param in the client's commands
+     * @param out the replies to the client
+     * @param tableEntries the number of entries in the session's
+     * transposition table
+     */
+    public EngineSession(final Reader in, final Writer out, final int tableEntries) {
+        this.in = new BufferedReader(in);
+        this.out = new PrintWriter(out);
+        search = new Search(SCORES, new TranspositionTable(tableEntries));
+        searcher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "engine-session");
+            thread.setDaemon(true);
+            return thread;
+        });
+        board = new Board();
+        turn = Board.BLACK;
+    }
+
+    /**
+     * Reads and carries out commands until the client quits or the input
+     * ends.
+     */
+    @Override
+    public void run() {
+        try {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                String[] tokens = line.trim().split("\\s+");
+
+                if (tokens[0].isEmpty()) {
+                    continue;
+                }
+                if (!handle(tokens)) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            stopSearch();
+            search.close();
+            searcher.shutdown();
+            out.flush();
+        }
+    }
+
+    /**
+     * Carries out a single command.
+     * @param tokens the words of the command
+     * @return false if the session should end
+     */
+    private boolean handle(final String[] tokens) {
+        switch (tokens[0]) {
+            case "isready":
+                send("readyok");
+                break;
+            case "newgame":
+                stopSearch();
+                board = new Board();
+                turn = Board.BLACK;
+                break;
+            case "position":
+                stopSearch();
+                setPosition(tokens);
+                break;
+            case "moves":
+                stopSearch();
+                playMoves(tokens, 1, board, turn);
+                break;
+            case "go":
+                stopSearch();
+                go(tokens);
+                break;
+            case "stop":
+                search.stop();
+                break;
+            case "eval":
+                stopSearch();
+                send("eval " + NodeEval.formatEval(board.evaluation(SCORES)));
+                break;
+            case "setoption":
+                stopSearch();
+                setOption(tokens);
+                break;
+            case "quit":
+                return false;
+            default:
+                send("error unknown command " + tokens[0]);
+                break;
+        }
+
+        return true;
+    }
+
+    /**
+     * Carries out a position command.
+     * @param tokens the words of the command
+     */
+    private void setPosition(final String[] tokens) {
+        Board next = new Board();
+        byte nextTurn = Board.BLACK;
+        int index = 2;
+
+        if (tokens.length > 1 && tokens[1].equals("startpos")) {
+            if (tokens.length > index && (tokens[index].equals("b") || tokens[index].equals("w"))) {
+                nextTurn = tokens[index].equals("w") ? Board.WHITE : Board.BLACK;
+                index++;
+            }
+        } else if (tokens.length > 3 && tokens[1].equals("cells")) {
+            if (!next.setCells(tokens[2])
+                    || !(tokens[3].equals("b") || tokens[3].equals("w"))) {
+                send("error bad position");
+                return;
+            }
+
+            nextTurn = tokens[3].equals("w") ? Board.WHITE : Board.BLACK;
+            index = 4;
+        } else {
+            send("error bad position");
+            return;
+        }
+
+        if (tokens.length > index) {
+            if (!tokens[index].equals("moves")) {
+                send("error bad position");
+                return;
+            }
+
+            index++;
+        }
+
+        playMoves(tokens, index, next, nextTurn);
+    }
+
+    /**
+     * Plays moves on a position, which becomes the session's position only
+     * if every move is legal. A move without a rotation is legal only if its
+     * placement ends the game.
+     * @param tokens the words of the command
+     * @param index the index of the first word of the first move
+     * @param start the position on which to play, which is left unchanged
+     * @param startTurn the color on-move in the position
+     */
+    private void playMoves(final String[] tokens, final int index, final Board start, final byte startTurn) {
+        Board next = new Board(start);
+        byte nextTurn = startTurn;
+
+        for (int i = index; i < tokens.length; i++) {
+            String notation = tokens[i];
+
+            if (i + 1 < tokens.length && tokens[i + 1].indexOf('/') < 0) {
+                i++;
+                notation += " " + tokens[i];
+            }
+
+            int move = Move.parse(notation);
+
+            if (move == Move.NONE
+                    || next.getResult() != Board.UNFINISHED
+                    || next.getCell(Move.cell(move)) != Board.EMPTY) {
+                send("error illegal move " + notation);
+                return;
+            }
+
+            Move.play(next, nextTurn, move);
+
+            if (Move.quad(move) == Move.NO_ROTATION && next.getResult() == Board.UNFINISHED) {
+                send("error illegal move " + notation);
+                return;
+            }
+
+            nextTurn = Board.oppositeColor(nextTurn);
+        }
+
+        board = next;
+        turn = nextTurn;
+    }
+
+    /**
+     * Carries out a go command, starting a search of a copy of the current
+     * position on the session's thread.
+     * @param tokens the words of the command
+     */
+    private void go(final String[] tokens) {
+        int depth = Board.BOARD_SIZE;
+        long time = 0;
+        long nodes = 0;
+
+        try {
+            for (int i = 1; i < tokens.length; i += 2) {
+                switch (tokens[i]) {
+                    case "depth":
+                        depth = (int) limitValue(tokens, i + 1, 1, Integer.MAX_VALUE);
+                        break;
+                    case "time":
+                        time = limitValue(tokens, i + 1, 0, Long.MAX_VALUE);
+                        break;
+                    case "nodes":
+                        nodes = limitValue(tokens, i + 1, 0, Long.MAX_VALUE);
+                        break;
+                    default:
+                        send("error unknown limit " + tokens[i]);
+                        return;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            send("error bad limit");
+            return;
+        }
+
+        if (board.getResult() != Board.UNFINISHED) {
+            send("bestmove none");
+            return;
+        }
+
+        Board position = new Board(board);
+        byte side = turn;
+        int maxDepth = depth;
+        long timeBudget = time;
+        long nodeBudget = nodes;
+
+        search.clearStop();
+        running = searcher.submit(() -> {
+            long start = System.nanoTime();
+            NodeEval eval = search.findBestMove(position, side, maxDepth, timeBudget, nodeBudget);
+            long elapsed = (System.nanoTime() - start) / NANOS_PER_MILLI;
+
+            send("info depth " + search.getCompletedDepth()
+                 + " score " + NodeEval.formatEval(eval.eval)
+                 + " nodes " + search.getNodeCount()
+                 + " time " + elapsed);
+            send("bestmove " + Move.toNotation(Move.fromNodeEval(eval)));
+        });
+    }
+
+    /**
+     * Reads the value of a search limit.
+     * @param tokens the words of the command
+     * @param index the index of the value
+     * @param min the least value allowed
+     * @param max the greatest value allowed
+     * @return the value
+     * @throws IllegalArgumentException if the value is missing, not a number
+     * or out of range
+     */
+    private static long limitValue(final String[] tokens, final int index, final long min, final long max) {
+        if (index >= tokens.length) {
+            throw new IllegalArgumentException("Missing value for " + tokens[index - 1]);
+        }
+
+        long value = Long.parseLong(tokens[index]);
+
+        if (value < min || value > max) {
+            throw new IllegalArgumentException("Bad value for " + tokens[index - 1] + ": " + tokens[index]);
+        }
+
+        return value;
+    }
+
+    /**
+     * Carries out a setoption command.
+     * @param tokens the words of the command
+     */
+    private void setOption(final String[] tokens) {
+        if (tokens.length != 3) {
+            send("error bad option");
+            return;
+        }
+
+        try {
+            switch (tokens[1]) {
+                case "threads":
+                    search.setThreadCount(Integer.parseInt(tokens[2]));
+                    break;
+                case "endgame":
+                    search.setEndgameEmptyCells(Integer.parseInt(tokens[2]));
+                    break;
+                case "quiescence":
+                    search.setQuiescencePlies(Integer.parseInt(tokens[2]));
+                    break;
+                case "lmr":
+                    search.setLateMoveReductions(Integer.parseInt(tokens[2]));
+                    break;
+                case "futility":
+                    search.setFutilityMargin(Double.parseDouble(tokens[2]));
+                    break;
+                case "research":
+                    search.setReductionResearch(!tokens[2].equals("0"));
+                    break;
+                case "book":
+                    search.setOpeningBook(OpeningBook.open(new File(tokens[2])));
+                    break;
+                default:
+                    send("error unknown option " + tokens[1]);
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            send("error bad option");
+        } catch (IOException e) {
+            send("error cannot open book " + tokens[2]);
+        }
+    }
+
+    /**
+     * Stops the running search, if any, and waits for it to send its reply.
+     * The reading thread never waits on a search that has not been asked to
+     * stop, since it could then never read the client's stop command.
+     */
+    private void stopSearch() {
+        if (running == null) {
+            return;
+        }
+
+        search.stop();
+
+        try {
+            running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            send("error search failed");
+        }
+
+        running = null;
+    }
+
+    /**
+     * Sends a reply to the client. Replies from the search thread and the
+     * reading thread never interleave.
+     * @param line the reply
+     */
+    private void send(final String line) {
+        synchronized (out) {
+            out.println(line);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+/**
+ * A game from the empty board: the color that moved first, the moves in
+ * packed form and the result. Records are meant to be reused while
+ * streaming through a record file, so every field can be changed.
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+public class GameRecord {
+    /**
+     * The color that moved first.
+     */
+    private byte first;
+    /**
+     * The result of the game, as given by Board.getResult.
+     */
+    private byte result;
+    /**
+     * The packed moves, of which the first length are used.
+     */
+    private final int[] moves;
+    /**
+     * The number of moves in the game.
+     */
+    private int length;
+
+    /**
+     * Constructs a record of a game not yet started, with black to move.
+     */
+    public GameRecord() {
+        first = Board.BLACK;
+        result = Board.UNFINISHED;
+        moves = new int[Board.BOARD_SIZE];
+        length = 0;
+    }
+
+    /**
+     * Empties the record for a new game.
+     * @param first the color that moves first
+     */
+    public void clear(final byte first) {
+        this.first = first;
+        result = Board.UNFINISHED;
+        length = 0;
+    }
+
+    /**
+     * Adds a move to the end of the game.
+     * @param move the packed move
+     * @throws IllegalStateException if the board would already be full
+     */
+    public void addMove(final int move) {
+        if (length == moves.length) {
+            throw new IllegalStateException("Game is longer than the board allows");
+        }
+
+        moves[length++] = move;
+    }
+
+    /**
+     * Plays the game on a board.
+     * @param board the board, which should be empty
+     * @return the color on-move after the last move
+     */
+    public byte replay(final Board board) {
+        byte turn = first;
+
+        for (int i = 0; i < length; i++) {
+            Move.play(board, turn, moves[i]);
+            turn = Board.oppositeColor(turn);
+        }
+
+        return turn;
+    }
+
+    /**
+     * Gets the color that moved first.
+     * @return Board.BLACK or Board.WHITE
+     */
+    public byte getFirst() {
+        return first;
+    }
+
+    /**
+     * Gets the result of the game.
+     * @return Board.WHITE, Board.BLACK, Board.TIE or Board.UNFINISHED
+     */
+    public byte getResult() {
+        return result;
+    }
+
+    /**
+     * Sets the result of the game.
+     * @param result Board.WHITE, Board.BLACK, Board.TIE or Board.UNFINISHED
+     */
+    public void setResult(final byte result) {
+        this.result = result;
+    }
+
+    /**
+     * Gets the number of moves in the game.
+     * @return the number of moves
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets one of the moves of the game.
+     * @param index the index of the move, 0 for the first
+     * @return the packed move
+     */
+    public int getMove(final int index) {
+        return moves[index];
+    }
+}
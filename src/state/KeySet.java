@@ -0,0 +1,84 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+import java.util.Arrays;
+
+/**
+ * A small set of position hashes, used to recognize duplicate children
+ * while the moves of a single node are searched. Clearing the set takes
+ * constant time, so one set can be reused for every node at a given depth.
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+class KeySet {
+    /**
+     * The number of slots in the set, comfortably more than the number of
+     * children of any node.
+     */
+    private static final int CAPACITY = 1024;
+    /**
+     * The mask applied to a hash to find its first slot.
+     */
+    private static final int SLOT_MASK = CAPACITY - 1;
+
+    /**
+     * The hash held in each slot.
+     */
+    private final long[] keys;
+    /**
+     * The stamp of the clearing in which each slot was filled. Slots with an
+     * older stamp are empty.
+     */
+    private final int[] stamps;
+    /**
+     * The stamp of the current clearing.
+     */
+    private int stamp;
+
+    /**
+     * Constructs an empty set.
+     */
+    KeySet() {
+        keys = new long[CAPACITY];
+        stamps = new int[CAPACITY];
+        stamp = 1;
+    }
+
+    /**
+     * Removes every hash from the set.
+     */
+    void clear() {
+        stamp++;
+
+        if (stamp == 0) {
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+    }
+
+    /**
+     * Adds a hash to the set.
+     * @param key the hash to add
+     * @return true if the hash was added, or false if it was already present
+     */
+    boolean add(final long key) {
+        int slot = (int) (key ^ (key >>> 32)) & SLOT_MASK;
+
+        while (stamps[slot] == stamp) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & SLOT_MASK;
+        }
+
+        stamps[slot] = stamp;
+        keys[slot] = key;
+
+        return true;
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+/**
+ * Static helpers for moves packed into a single int: the cell at which the
+ * stone is placed, the quad to be rotated, and the direction of rotation.
+ * Packed moves let the search keep its move lists in primitive arrays.
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+public final class Move {
+    /**
+     * The packed value standing for no move at all.
+     */
+    public static final int NONE = TranspositionTable.NO_MOVE;
+    /**
+     * The quad of a move that places a stone without rotating, which is only
+     * the case when the placement itself wins.
+     */
+    public static final int NO_ROTATION = -1;
+    /**
+     * The number of distinct rotations that can follow a placement.
+     */
+    public static final int NUM_ROTATIONS = 2 * Board.NUM_QUADS;
+    /**
+     * The number of bits used for the cell of a packed move.
+     */
+    private static final int CELL_BITS = 6;
+    /**
+     * The mask of the cell of a packed move.
+     */
+    private static final int CELL_MASK = (1 << CELL_BITS) - 1;
+    /**
+     * The number of bits used for the quad, plus one, of a packed move.
+     */
+    private static final int QUAD_BITS = 3;
+    /**
+     * The mask of the quad, plus one, of a packed move once shifted into place.
+     */
+    private static final int QUAD_MASK = (1 << QUAD_BITS) - 1;
+    /**
+     * The position of the clockwise flag within a packed move.
+     */
+    private static final int CLOCKWISE_SHIFT = CELL_BITS + QUAD_BITS;
+    /**
+     * The width and height of a quad, in cells.
+     */
+    private static final int QUAD_WIDTH = Board.BOARD_WIDTH / 2;
+
+    /**
+     * Moves are never instantiated.
+     */
+    private Move() {
+    }
+
+    /**
+     * Packs a move.
+     * @param cell the index of the cell at which the stone is placed
+     * @param quad the number of the quad to rotate, or NO_ROTATION
+     * @param clockwise whether the quad is rotated clockwise
+     * @return the packed move
+     */
+    public static int of(final int cell, final int quad, final boolean clockwise) {
+        int move = cell | ((quad + 1) << CELL_BITS);
+
+        if (clockwise && quad != NO_ROTATION) {
+            move |= 1 << CLOCKWISE_SHIFT;
+        }
+
+        return move;
+    }
+
+    /**
+     * Packs a move from its place in the order in which rotations are tried.
+     * @param cell the index of the cell at which the stone is placed
+     * @param rotation the rotation, 0-7, being twice the quad plus one if
+     * the rotation is clockwise
+     * @return the packed move
+     */
+    public static int ofRotation(final int cell, final int rotation) {
+        return of(cell, rotation / 2, rotation % 2 == 1);
+    }
+
+    /**
+     * Gets the cell at which a move places its stone.
+     * @param move the packed move
+     * @return the index of the cell, numbered left-to-right, top-to-bottom
+     */
+    public static int cell(final int move) {
+        return move & CELL_MASK;
+    }
+
+    /**
+     * Gets the quad rotated by a move.
+     * @param move the packed move
+     * @return the number of the quad, or NO_ROTATION
+     */
+    public static int quad(final int move) {
+        return ((move >>> CELL_BITS) & QUAD_MASK) - 1;
+    }
+
+    /**
+     * Gets whether a move rotates its quad clockwise.
+     * @param move the packed move
+     * @return whether the rotation is clockwise
+     */
+    public static boolean isClockwise(final int move) {
+        return ((move >>> CLOCKWISE_SHIFT) & 1) != 0;
+    }
+
+    /**
+     * Gets the direction of a move's rotation in the form used by NodeEval.
+     * @param move the packed move
+     * @return 1 for clockwise, -1 for counter-clockwise, or 0 for no rotation
+     */
+    public static int direction(final int move) {
+        if (quad(move) == NO_ROTATION) {
+            return 0;
+        }
+
+        return isClockwise(move) ? 1 : -1;
+    }
+
+    /**
+     * Gets a move's place in the order in which rotations are tried.
+     * @param move the packed move
+     * @return twice the quad plus one if the rotation is clockwise, or 0 if
+     * the move does not rotate
+     */
+    public static int rotation(final int move) {
+        int quad = quad(move);
+
+        return (quad == NO_ROTATION) ? 0 : 2 * quad + (isClockwise(move) ? 1 : 0);
+    }
+
+    /**
+     * Moves a move by one of the board's symmetries.
+     * @param move the packed move
+     * @param sym the symmetry, 0-7
+     * @return the packed move that plays the same role on the transformed board
+     */
+    public static int transform(final int move, final int sym) {
+        if (move == NONE) {
+            return move;
+        }
+
+        int quad = quad(move);
+        boolean clockwise = isClockwise(move);
+
+        if (quad != NO_ROTATION) {
+            quad = Board.transformQuad(sym, quad);
+            clockwise ^= Board.isReflection(sym);
+        }
+
+        return of(Board.transformCell(sym, cell(move)), quad, clockwise);
+    }
+
+    /**
+     * Plays a move on a board.
+     * @param board the board on which to play
+     * @param turn the color on-move
+     * @param move the packed move
+     */
+    public static void play(final Board board, final byte turn, final int move) {
+        board.move(turn, cell(move), quad(move), isClockwise(move));
+    }
+
+    /**
+     * Converts a packed move into the NodeEval form of a recommendation.
+     * @param move the packed move
+     * @param eval the NodeEval to receive the location, quad and direction
+     */
+    public static void toNodeEval(final int move, final NodeEval eval) {
+        if (move == NONE) {
+            eval.loc = new int[] {-1, -1};
+            eval.quad = NO_ROTATION;
+            eval.rot = 0;
+            return;
+        }
+
+        int cell = cell(move);
+        eval.loc = new int[] {cell % Board.BOARD_WIDTH, cell / Board.BOARD_WIDTH};
+        eval.quad = quad(move);
+        eval.rot = direction(move);
+    }
+
+    /**
+     * Packs the move recommended by a NodeEval.
+     * @param eval the evaluation and move recommendation
+     * @return the packed move, or NONE if there is no recommendation
+     */
+    public static int fromNodeEval(final NodeEval eval) {
+        if (eval.loc == null || eval.loc[0] < 0) {
+            return NONE;
+        }
+
+        return of(Board.cellIndex(eval.loc), eval.quad, eval.rot == 1);
+    }
+
+    /**
+     * Writes a move in the standard form "block/cell quadDir", where blocks,
+     * cells and quads count from 1 in reading order and the direction is R
+     * for clockwise or L for anticlockwise. A move that does not rotate is
+     * written as "block/cell" alone.
+     * @param move the packed move
+     * @return the move in the standard form
+     */
+    public static String toNotation(final int move) {
+        int cell = cell(move);
+        int x = cell % Board.BOARD_WIDTH;
+        int y = cell / Board.BOARD_WIDTH;
+        int block = 2 * (y / QUAD_WIDTH) + x / QUAD_WIDTH + 1;
+        int blockCell = QUAD_WIDTH * (y % QUAD_WIDTH) + x % QUAD_WIDTH + 1;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(block);
+        sb.append("/");
+        sb.append(blockCell);
+
+        if (quad(move) != NO_ROTATION) {
+            sb.append(" ");
+            sb.append(quad(move) + 1);
+            sb.append(isClockwise(move) ? "R" : "L");
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Parses a move in the standard form written by toNotation. The
+     * direction may be given in either case.
+     * @param str the move in the standard form
+     * @return the packed move, or NONE if the string is not a move
+     */
+    public static int parse(final String str) {
+        String[] strs = str.trim().split("\\s+");
+        if (strs.length < 1 || strs.length > 2) {
+            return NONE;
+        }
+
+        try {
+            String[] locStrs = strs[0].split("/");
+            if (locStrs.length != 2) {
+                return NONE;
+            }
+
+            int block = Integer.parseInt(locStrs[0]);
+            int blockCell = Integer.parseInt(locStrs[1]);
+
+            if (block < 1 || block > Board.NUM_QUADS
+                    || blockCell < 1 || blockCell > QUAD_WIDTH * QUAD_WIDTH) {
+                return NONE;
+            }
+
+            block -= 1;
+            blockCell -= 1;
+
+            int x = QUAD_WIDTH * (block % 2) + blockCell % QUAD_WIDTH;
+            int y = QUAD_WIDTH * (block / 2) + blockCell / QUAD_WIDTH;
+            int cell = y * Board.BOARD_WIDTH + x;
+
+            if (strs.length == 1) {
+                return of(cell, NO_ROTATION, false);
+            }
+
+            if (strs[1].length() != 2) {
+                return NONE;
+            }
+
+            int rotBlock = Integer.parseInt(strs[1].substring(0, 1));
+            String dirStr = strs[1].substring(1, 2).toLowerCase();
+
+            if (rotBlock < 1 || rotBlock > Board.NUM_QUADS
+                    || (!dirStr.equals("l") && !dirStr.equals("r"))) {
+                return NONE;
+            }
+
+            return of(cell, rotBlock - 1, dirStr.equals("r"));
+        } catch (NumberFormatException e) {
+            return NONE;
+        }
+    }
+}
@@ -6,6 +6,8 @@
 
 package state;
 
+import java.util.Locale;
+
 /**
  * Defines an evaluation and move recommendation for a board state.
  * @author Neil Hulbert
@@ -15,7 +17,7 @@ public class NodeEval implements Comparable<NodeEval> {
     /**
      * The raw evaluation score
      */
-    Double eval;
+    double eval;
     /**
      * The depth from which the evaluation originates
      */
@@ -68,4 +70,22 @@ public class NodeEval implements Comparable<NodeEval> {
 
         return Integer.compare(o.terminalDepth, terminalDepth);
     }
+
+    /**
+     * Writes an evaluation from white's point of view.
+     * @param eval the evaluation
+     * @return the evaluation to two decimal places, or "white", "black" or
+     * "tie" for a finished or proven game
+     */
+    public static String formatEval(final double eval) {
+        if (eval == Board.MAX_EVAL) {
+            return "white";
+        } else if (eval == Board.MIN_EVAL) {
+            return "black";
+        } else if (Double.isNaN(eval)) {
+            return "tie";
+        }
+
+        return String.format(Locale.ROOT, "%.2f", eval);
+    }
 }
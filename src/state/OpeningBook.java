@@ -0,0 +1,232 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A read-only table of best moves for early positions, found ahead of time
+ * by deep searches. The book file holds fixed-size entries sorted by each
+ * position's canonical hash, so it is memory-mapped rather than parsed and
+ * looked up by binary search.
+ * <p>
+ * File layout: the int MAGIC, the int VERSION and the int number of entries,
+ * then per entry the long canonical hash, the float evaluation, the short
+ * packed move in the canonical position's frame, the signed byte terminal
+ * depth, negative for a win beyond the search depth, and the unsigned byte
+ * search depth.
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+public class OpeningBook {
+    /**
+     * The first four bytes of every book file.
+     */
+    public static final int MAGIC = 0x50424F4B;
+    /**
+     * The version of the file layout.
+     */
+    public static final int VERSION = 1;
+    /**
+     * The number of bytes before the first entry.
+     */
+    private static final int HEADER_BYTES = 12;
+    /**
+     * The number of bytes in each entry.
+     */
+    private static final int ENTRY_BYTES = 16;
+    /**
+     * The position of the evaluation within an entry.
+     */
+    private static final int EVAL_OFFSET = 8;
+    /**
+     * The position of the packed move within an entry.
+     */
+    private static final int MOVE_OFFSET = 12;
+    /**
+     * The position of the terminal depth within an entry.
+     */
+    private static final int TERMINAL_DEPTH_OFFSET = 14;
+    /**
+     * The position of the search depth within an entry.
+     */
+    private static final int DEPTH_OFFSET = 15;
+    /**
+     * The largest value stored in a byte field of an entry.
+     */
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * The mapped contents of the book file.
+     */
+    private final ByteBuffer buffer;
+    /**
+     * The number of entries in the book.
+     */
+    private final int size;
+
+    /**
+     * Constructs a book over the contents of a book file.
+     * @param buffer the contents of the file, positioned at its start
+     * @throws IOException if the contents are not a book
+     */
+    private OpeningBook(final ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_BYTES
+                || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not an opening book");
+        }
+
+        this.buffer = buffer;
+        size = buffer.getInt(8);
+
+        if ((long) HEADER_BYTES + (long) size * ENTRY_BYTES > buffer.capacity()) {
+            throw new IOException("Truncated opening book");
+        }
+    }
+
+    /**
+     * Memory-maps a book file.
+     * @param file the book file
+     * @return the book
+     * @throws IOException if the file cannot be read or is not a book
+     */
+    public static OpeningBook open(final File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Gets the number of positions in the book.
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Looks up the best move for a position.
+     * @param board the board state
+     * @param turn the color of the player on-move
+     * @return the stored evaluation and move recommendation, with the move in
+     * the board's own frame, or null if the position is not in the book
+     */
+    public NodeEval lookup(final Board board, final byte turn) {
+        int sym = board.getCanonicalSymmetry(turn);
+        int entry = find(board.getSymmetricHash(sym, turn));
+
+        if (entry < 0) {
+            return null;
+        }
+
+        int move = Move.transform(buffer.getShort(entry + MOVE_OFFSET) & TranspositionTable.NO_MOVE,
+                                  Board.inverseSymmetry(sym));
+
+        if (move == Move.NONE || board.getCell(Move.cell(move)) != Board.EMPTY) {
+            return null;
+        }
+
+        NodeEval eval = new NodeEval(buffer.getFloat(entry + EVAL_OFFSET),
+                                     buffer.get(entry + TERMINAL_DEPTH_OFFSET),
+                                     null,
+                                     0,
+                                     0);
+        Move.toNodeEval(move, eval);
+
+        return eval;
+    }
+
+    /**
+     * Gets the search depth from which a position's entry was made.
+     * @param board the board state
+     * @param turn the color of the player on-move
+     * @return the depth, or -1 if the position is not in the book
+     */
+    public int depth(final Board board, final byte turn) {
+        int entry = find(board.getCanonicalHash(turn));
+
+        return (entry < 0) ? -1 : buffer.get(entry + DEPTH_OFFSET) & BYTE_MASK;
+    }
+
+    /**
+     * Finds the entry for a canonical hash by binary search.
+     * @param key the canonical hash of the position
+     * @return the byte offset of the entry, or -1 if there is none
+     */
+    private int find(final long key) {
+        int low = 0;
+        int high = size - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = HEADER_BYTES + mid * ENTRY_BYTES;
+            int comp = Long.compare(buffer.getLong(entry), key);
+
+            if (comp < 0) {
+                low = mid + 1;
+            } else if (comp > 0) {
+                high = mid - 1;
+            } else {
+                return entry;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Writes a book file.
+     * @param file the file to write
+     * @param keys the canonical hashes of the positions, in any order and
+     * without duplicates
+     * @param moves the packed best move of each position, in the canonical
+     * position's frame
+     * @param evals the evaluation of each position
+     * @param depth the depth to which the positions were searched
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(final File file,
+                             final long[] keys,
+                             final int[] moves,
+                             final NodeEval[] evals,
+                             final int depth) throws IOException {
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + keys.length * ENTRY_BYTES);
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putInt(keys.length);
+
+        for (int i : order) {
+            out.putLong(keys[i]);
+            out.putFloat((float) evals[i].eval);
+            out.putShort((short) moves[i]);
+            out.put((byte) Math.max(Byte.MIN_VALUE, Math.min(evals[i].terminalDepth, Byte.MAX_VALUE)));
+            out.put((byte) Math.min(depth, BYTE_MASK));
+        }
+        out.flip();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The entry-point class for building an opening book offline. Every position
+ * reachable with up to a given number of stones is found, one per symmetry
+ * class and with either color having moved first, searched deeply and
+ * written to a book file.
+ * <p>
+ * Usage: java state.OpeningBookBuilder file maxStones depth [threads]
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+public class OpeningBookBuilder {
+    /**
+     * The scoring weights used for the searches.
+     */
+    private static final double[][] SCORES = PentagoMain.DEFAULT_SCORES;
+    /**
+     * The number of positions searched between progress reports.
+     */
+    private static final int REPORT_INTERVAL = 100;
+
+    /**
+     * A growable list of positions, each kept as the bitboards of both
+     * colors and the color on-move rather than as a Board, so that millions
+     * of positions fit in memory.
+     */
+    private static class PositionList {
+        /**
+         * The number of positions the list has room for when created.
+         */
+        private static final int INITIAL_CAPACITY = 64;
+
+        /**
+         * The bitboards of the black stones of each position.
+         */
+        private long[] blacks = new long[INITIAL_CAPACITY];
+        /**
+         * The bitboards of the white stones of each position.
+         */
+        private long[] whites = new long[INITIAL_CAPACITY];
+        /**
+         * The color on-move in each position.
+         */
+        private byte[] turns = new byte[INITIAL_CAPACITY];
+        /**
+         * The number of positions in the list.
+         */
+        private int size;
+
+        /**
+         * Adds a position to the end of the list.
+         * @param board the board state, of which only the stones are kept
+         * @param turn the color on-move
+         */
+        void add(final Board board, final byte turn) {
+            if (size == blacks.length) {
+                blacks = Arrays.copyOf(blacks, 2 * size);
+                whites = Arrays.copyOf(whites, 2 * size);
+                turns = Arrays.copyOf(turns, 2 * size);
+            }
+
+            blacks[size] = board.getStones(Board.BLACK);
+            whites[size] = board.getStones(Board.WHITE);
+            turns[size] = turn;
+            size++;
+        }
+
+        /**
+         * Gets the number of positions in the list.
+         * @return the number of positions
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * Sets a board to one of the positions.
+         * @param index the index of the position
+         * @param board the board to set
+         * @return the color on-move
+         */
+        byte get(final int index, final Board board) {
+            board.setStones(blacks[index], whites[index]);
+
+            return turns[index];
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Usage: java state.OpeningBookBuilder file maxStones depth [threads]");
+            return;
+        }
+
+        File file = new File(args[0]);
+        int maxStones = Integer.parseInt(args[1]);
+        int depth = Integer.parseInt(args[2]);
+        int threads = (args.length > 3) ? Integer.parseInt(args[3])
+                                        : Runtime.getRuntime().availableProcessors();
+
+        PositionList positions = new PositionList();
+        enumeratePositions(maxStones, Board.BLACK, positions);
+        enumeratePositions(maxStones, Board.WHITE, positions);
+        System.out.println(positions.size() + " positions with up to " + maxStones + " stones");
+
+        long[] keys = new long[positions.size()];
+        int[] moves = new int[positions.size()];
+        NodeEval[] evals = new NodeEval[positions.size()];
+
+        try {
+            searchPositions(positions, depth, threads, keys, moves, evals);
+            OpeningBook.write(file, keys, moves, evals, depth);
+            System.out.println("Wrote " + positions.size() + " entries to " + file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Finds every unfinished position reachable from the empty board with up
+     * to a given number of stones, keeping one position per symmetry class.
+     * @param maxStones the greatest number of stones on a position
+     * @param first the color that moves first
+     * @param positions the list to receive the positions, in order of
+     * increasing number of stones
+     */
+    private static void enumeratePositions(final int maxStones,
+                                           final byte first,
+                                           final PositionList positions) {
+        Board board = new Board();
+        PositionList level = new PositionList();
+        level.add(board, first);
+        byte turn = first;
+
+        for (int stones = 0; stones <= maxStones && level.size() > 0; stones++) {
+            for (int i = 0; i < level.size(); i++) {
+                level.get(i, board);
+                positions.add(board, turn);
+            }
+
+            if (stones == maxStones) {
+                break;
+            }
+
+            PositionList next = new PositionList();
+            Set<Long> seen = new HashSet<>();
+            byte nextTurn = Board.oppositeColor(turn);
+
+            for (int i = 0; i < level.size(); i++) {
+                level.get(i, board);
+
+                for (int cell = 0; cell < Board.BOARD_SIZE; cell++) {
+                    if (board.getCell(cell) != Board.EMPTY) {
+                        continue;
+                    }
+
+                    for (int rotation = 0; rotation < Move.NUM_ROTATIONS; rotation++) {
+                        board.saveState();
+                        Move.play(board, turn, Move.ofRotation(cell, rotation));
+
+                        if (board.getResult() == Board.UNFINISHED
+                                && seen.add(board.getCanonicalHash(nextTurn))) {
+                            next.add(board, nextTurn);
+                        }
+                        board.restoreState();
+                    }
+                }
+            }
+
+            level = next;
+            turn = nextTurn;
+        }
+    }
+
+    /**
+     * Searches every position on a pool of threads, each with its own Search.
+     * A board is built for each position only as it is searched.
+     * @param positions the positions to search
+     * @param depth the depth to which to search
+     * @param threads the number of threads
+     * @param keys the array to receive each position's canonical hash
+     * @param moves the array to receive each position's best move, in the
+     * canonical position's frame
+     * @param evals the array to receive each position's evaluation
+     * @throws InterruptedException if interrupted while waiting for the
+     * searches
+     */
+    private static void searchPositions(final PositionList positions,
+                                        final int depth,
+                                        final int threads,
+                                        final long[] keys,
+                                        final int[] moves,
+                                        final NodeEval[] evals) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        List<Future<?>> running = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            running.add(pool.submit(() -> {
+                Search search = new Search(SCORES);
+
+                for (int i = next.getAndIncrement(); i < positions.size(); i = next.getAndIncrement()) {
+                    Board board = new Board();
+                    byte turn = positions.get(i, board);
+                    int sym = board.getCanonicalSymmetry(turn);
+                    NodeEval eval = search.findBestMove(board, turn, depth, 0, 0);
+
+                    keys[i] = board.getSymmetricHash(sym, turn);
+                    moves[i] = Move.transform(Move.fromNodeEval(eval), sym);
+                    evals[i] = eval;
+
+                    int finished = done.incrementAndGet();
+                    if (finished % REPORT_INTERVAL == 0) {
+                        System.out.println(finished + "/" + positions.size() + " positions searched");
+                    }
+                }
+
+                search.close();
+            }));
+        }
+
+        try {
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -8,7 +8,9 @@ package state;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.Scanner;
 
@@ -19,14 +21,44 @@ import java.util.Scanner;
  */
 public class PentagoMain {
     /**
-     * The depth at which the AI will perform all move searches.
+     * The number of milliseconds the AI will spend on each move search.
      */
-    public static final int AI_SEARCH_DEPTH = 3;
+    public static final long AI_TIME_BUDGET = 3000;
+    /**
+     * The deepest the AI will search, however much time remains.
+     */
+    public static final int AI_MAX_DEPTH = Board.BOARD_SIZE;
+    /**
+     * The number of threads the AI will search with.
+     */
+    public static final int AI_THREADS = Runtime.getRuntime().availableProcessors();
+    /**
+     * The command-line argument that turns on a line of search statistics
+     * after each AI move.
+     */
+    public static final String STATS_FLAG = "-stats";
+    /**
+     * The command-line argument that has the AI search on the human's time,
+     * while the human is entering a move.
+     */
+    public static final String PONDER_FLAG = "-ponder";
+    /**
+     * The opening book file consulted by the AI, if it exists.
+     */
+    public static final String OPENING_BOOK_FILE = "book.bin";
+    /**
+     * The scoring weights used by the AI, and by the other entry points
+     * unless they are given their own. Should not be modified.
+     */
+    public static final double[][] DEFAULT_SCORES = new double[][] {{1,2,3,4,5,6},
+                                                                    {2,3,4,5,6,7}};
     
     public static void main(String[] args) {
-        final double[][] SCORES = new double[][] {{1,2,3,4,5,6},
-                                                  {2,3,4,5,6,7}};
+        final double[][] SCORES = DEFAULT_SCORES;
                                                   
+        boolean logStats = Arrays.asList(args).contains(STATS_FLAG);
+        boolean ponder = Arrays.asList(args).contains(PONDER_FLAG);
+
         try {
             PrintStream printStream = new PrintStream(new File("Output.txt"));
         
@@ -70,6 +102,17 @@ public class PentagoMain {
 
             Board board = new Board();
             Search search = new Search(SCORES);
+            search.setThreadCount(AI_THREADS);
+
+            File bookFile = new File(OPENING_BOOK_FILE);
+            if (bookFile.exists()) {
+                try {
+                    search.setOpeningBook(OpeningBook.open(bookFile));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
             println(printStream, "Starting Board:\n" + board + "\n");
     
             double eval = 0;
@@ -93,20 +136,29 @@ public class PentagoMain {
                 } else {
                     println(printStream, names[turnInd] + "'s(AI) turn");
                     println(printStream, "Color: " + ((colors[turnInd] == Board.WHITE) ? "W" : "B"));
-                    NodeEval compMove = search.evaluateAtDepth(board,
+                    NodeEval compMove = search.findBestMove(board,
                             colors[turnInd],
-                            AI_SEARCH_DEPTH,
-                            new NodeEval(Board.MIN_EVAL, Integer.MAX_VALUE, null, 0, 0),
-                            new NodeEval(Board.MAX_EVAL, Integer.MAX_VALUE, null, 0, 0));
+                            AI_MAX_DEPTH,
+                            AI_TIME_BUDGET,
+                            0);
                     board.move(colors[turnInd], compMove.loc, compMove.quad, compMove.rot == 1);
                     println(printStream, "AI move: " + compMoveToString(compMove));
+                    if (logStats) {
+                        System.out.println("Search: " + search.getStats());
+                    }
                     println(printStream, "\n" + board.toString());
                     
                     eval = board.evaluation(SCORES);
+
+                    if (ponder && Double.isFinite(eval)) {
+                        startPondering(search, board, colors[turnInd], Move.fromNodeEval(compMove));
+                    }
                 }
     
                 turnInd = 1 - turnInd;
             }
+
+            search.close();
     
             if (Double.isInfinite(eval)) {
                 int winInd = ((eval == Double.POSITIVE_INFINITY) == (colors[0] == Board.WHITE)) ? 0 : 1;
@@ -131,49 +183,48 @@ public class PentagoMain {
      * parsed.
      */
     private static boolean parseAndMakeMove(byte turn, Board board, String str) {
-        String[] strs = str.split(" ");
-        if (strs.length != 2) {
+        if (str.split(" ").length != 2) {
             return false;
         }
-        
-        try {
-            String[] locStrs = strs[0].split("/");
-            int block = Integer.parseInt(locStrs[0]);
-            int cell = Integer.parseInt(locStrs[1]);
-            
-            if (block < 1 || block > 4 || cell < 1 || cell > 9) {
-                return false;
-            }
-            
-            if (strs[1].length() != 2) {
-                return false;
-            }
-            
-            int rotBlock = Integer.parseInt(strs[1].substring(0,1));
-            String dirStr = strs[1].substring(1,2).toLowerCase();
-            
-            if (rotBlock < 1 || rotBlock > 4 || (!dirStr.equals("l") && !dirStr.equals("r"))) {
-                return false;
-            }
-            
-            block -= 1;
-            cell -= 1;
-            rotBlock -= 1;
-            
-            int[] loc = {3 * (block % 2) + cell % 3, 3 * (block / 2) + cell / 3};
-            
-            if (board.getLocation(loc) != Board.EMPTY) {
-                return false;
-            }
-            
-            board.move(turn, loc, rotBlock, dirStr.equals("r"));
-            
-            return true;
-        } catch (NumberFormatException e) {
+
+        int move = Move.parse(str);
+        if (move == Move.NONE || board.getCell(Move.cell(move)) != Board.EMPTY) {
             return false;
         }
+
+        Move.play(board, turn, move);
+
+        return true;
     }
     
+    /**
+     * Has the AI search on the human's time. If the AI's search expected a
+     * reply to the move it played, the position after that reply is
+     * searched, so that the AI's next search carries straight on if the
+     * human plays it. Otherwise the human's position is searched, which
+     * warms the AI's tables for every plausible reply at once.
+     * @param search the AI's search
+     * @param board the board state after the AI's move
+     * @param turn the color of the AI
+     * @param played the packed move the AI played
+     */
+    private static void startPondering(Search search, Board board, byte turn, int played) {
+        int[] pv = search.getPrincipalVariation();
+        byte human = Board.oppositeColor(turn);
+
+        if (pv.length > 1 && pv[0] == played && board.getCell(Move.cell(pv[1])) == Board.EMPTY) {
+            Board predicted = new Board(board);
+            Move.play(predicted, human, pv[1]);
+
+            if (predicted.getResult() == Board.UNFINISHED) {
+                search.ponder(predicted, turn, AI_MAX_DEPTH);
+                return;
+            }
+        }
+
+        search.ponder(board, human, AI_MAX_DEPTH);
+    }
+
     /**
      * Converts the NodeEval provided by the AI into a move in the
      * standard form.
@@ -182,22 +233,7 @@ public class PentagoMain {
      * @return A String representing the AI move in the standard form
      */
     private static String compMoveToString(NodeEval eval) {
-        StringBuffer sb = new StringBuffer();
-        
-        int block = 2 * (eval.loc[1] / 3) + eval.loc[0] / 3 + 1;
-        int cell = 3 * (eval.loc[1] % 3) + eval.loc[0] % 3 + 1;
-        
-        int rotBlock = eval.quad + 1;
-        String dir = (eval.rot == 1) ? "R" : "L";
-        
-        sb.append(block);
-        sb.append("/");
-        sb.append(cell);
-        sb.append(" ");
-        sb.append(rotBlock);
-        sb.append(dir);
-
-        return sb.toString();
+        return Move.toNotation(Move.fromNodeEval(eval));
     }
 
     /**
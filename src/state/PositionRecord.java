@@ -0,0 +1,215 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+/**
+ * A position along with what is known about it: the result of the game it
+ * came from, an evaluation, a best move and the depth behind them. Records
+ * are meant to be reused while streaming through a record file, so every
+ * field can be changed.
+ * <p>
+ * A position packs into a single long: the cells as a base-3 number, cell 0
+ * being the lowest digit and each digit 0 for empty, 1 for black or 2 for
+ * white, with the top bit set if white is on-move. Since 3^36 is less than
+ * 2^58, the digits never reach the top bit.
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+public class PositionRecord {
+    /**
+     * The bit of a packed position set when white is on-move.
+     */
+    private static final long WHITE_TO_MOVE = 1L << 63;
+    /**
+     * The number of values a cell can take.
+     */
+    private static final int CELL_VALUES = 3;
+
+    /**
+     * The packed position.
+     */
+    private long position;
+    /**
+     * The evaluation of the position from white's point of view.
+     */
+    private float score;
+    /**
+     * The packed best move, or Move.NONE.
+     */
+    private int move;
+    /**
+     * The result of the game the position came from, as given by
+     * Board.getResult, or Board.UNFINISHED if it is not known.
+     */
+    private byte result;
+    /**
+     * The depth to which the position was searched, or 0.
+     */
+    private int depth;
+
+    /**
+     * Constructs a record of the empty board with black on-move, about which
+     * nothing is known.
+     */
+    public PositionRecord() {
+        move = Move.NONE;
+        result = Board.UNFINISHED;
+    }
+
+    /**
+     * Packs a position into a single long.
+     * @param board the board state
+     * @param turn the color on-move
+     * @return the packed position
+     */
+    public static long pack(final Board board, final byte turn) {
+        long black = board.getStones(Board.BLACK);
+        long white = board.getStones(Board.WHITE);
+        long packed = 0;
+
+        for (int cell = Board.BOARD_SIZE - 1; cell >= 0; cell--) {
+            packed *= CELL_VALUES;
+            if ((white & (1L << cell)) != 0) {
+                packed += 2;
+            } else if ((black & (1L << cell)) != 0) {
+                packed += 1;
+            }
+        }
+
+        return (turn == Board.WHITE) ? packed | WHITE_TO_MOVE : packed;
+    }
+
+    /**
+     * Sets a board to a packed position.
+     * @param packed the packed position
+     * @param board the board to set
+     * @return the color on-move
+     */
+    public static byte unpack(final long packed, final Board board) {
+        long digits = packed & ~WHITE_TO_MOVE;
+        long black = 0;
+        long white = 0;
+
+        for (int cell = 0; cell < Board.BOARD_SIZE; cell++) {
+            int digit = (int) (digits % CELL_VALUES);
+            digits /= CELL_VALUES;
+
+            if (digit == 2) {
+                white |= 1L << cell;
+            } else if (digit == 1) {
+                black |= 1L << cell;
+            }
+        }
+
+        board.setStones(black, white);
+
+        return ((packed & WHITE_TO_MOVE) != 0) ? Board.WHITE : Board.BLACK;
+    }
+
+    /**
+     * Sets the record's position, forgetting everything known about the
+     * previous one.
+     * @param board the board state
+     * @param turn the color on-move
+     */
+    public void setPosition(final Board board, final byte turn) {
+        position = pack(board, turn);
+        score = 0;
+        move = Move.NONE;
+        result = Board.UNFINISHED;
+        depth = 0;
+    }
+
+    /**
+     * Sets a board to the record's position.
+     * @param board the board to set
+     * @return the color on-move
+     */
+    public byte getPosition(final Board board) {
+        return unpack(position, board);
+    }
+
+    /**
+     * Gets the packed position.
+     * @return the packed position
+     */
+    public long getPackedPosition() {
+        return position;
+    }
+
+    /**
+     * Sets the packed position.
+     * @param position the packed position
+     */
+    public void setPackedPosition(final long position) {
+        this.position = position;
+    }
+
+    /**
+     * Gets the evaluation of the position.
+     * @return the evaluation from white's point of view
+     */
+    public float getScore() {
+        return score;
+    }
+
+    /**
+     * Sets the evaluation of the position.
+     * @param score the evaluation from white's point of view
+     */
+    public void setScore(final float score) {
+        this.score = score;
+    }
+
+    /**
+     * Gets the best move from the position.
+     * @return the packed move, or Move.NONE
+     */
+    public int getMove() {
+        return move;
+    }
+
+    /**
+     * Sets the best move from the position.
+     * @param move the packed move, or Move.NONE
+     */
+    public void setMove(final int move) {
+        this.move = move;
+    }
+
+    /**
+     * Gets the result of the game the position came from.
+     * @return Board.WHITE, Board.BLACK, Board.TIE or Board.UNFINISHED
+     */
+    public byte getResult() {
+        return result;
+    }
+
+    /**
+     * Sets the result of the game the position came from.
+     * @param result Board.WHITE, Board.BLACK, Board.TIE or Board.UNFINISHED
+     */
+    public void setResult(final byte result) {
+        this.result = result;
+    }
+
+    /**
+     * Gets the depth to which the position was searched.
+     * @return the depth, or 0
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Sets the depth to which the position was searched.
+     * @param depth the depth, or 0
+     */
+    public void setDepth(final int depth) {
+        this.depth = depth;
+    }
+}
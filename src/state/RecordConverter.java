@@ -0,0 +1,257 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The entry-point class for converting between the text notations used by
+ * the other tools and record files.
+ * <p>
+ * Usage: java state.RecordConverter positions|games input output
+ * <br>
+ * Usage: java state.RecordConverter dump input
+ * <p>
+ * A text position is a line holding the 36 cells in row order as 'b', 'w' or
+ * '.', then either the color on-move as b or w, or white's score in the
+ * position's game as 1, 0.5 or 0, as in the weight tuner's corpus. A scored
+ * position is taken to have black on-move if both colors have as many
+ * stones. A text game is a line holding the color that moved first as b or
+ * w, then the moves in the standard form "block/cell quadDir". Dumping a
+ * record file writes each record on a line in the same notations, followed
+ * by whatever else the record holds.
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+public class RecordConverter {
+    /**
+     * The number of records converted between progress reports.
+     */
+    private static final int REPORT_INTERVAL = 1000000;
+
+    public static void main(String[] args) {
+        if (args.length < 2 || (!args[0].equals("dump") && args.length < 3)) {
+            System.out.println("Usage: java state.RecordConverter positions|games input output");
+            System.out.println("       java state.RecordConverter dump input");
+            return;
+        }
+
+        try {
+            switch (args[0]) {
+                case "positions":
+                    convertPositions(new File(args[1]), new File(args[2]));
+                    break;
+                case "games":
+                    convertGames(new File(args[1]), new File(args[2]));
+                    break;
+                case "dump":
+                    dump(new File(args[1]));
+                    break;
+                default:
+                    System.out.println("Unknown conversion: " + args[0]);
+                    break;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Converts text positions into a record file of positions.
+     * @param input the text positions
+     * @param output the record file to write
+     * @throws IOException if either file cannot be used, or a line is
+     * malformed
+     */
+    private static void convertPositions(final File input, final File output) throws IOException {
+        Board board = new Board();
+        PositionRecord record = new PositionRecord();
+        long count = 0;
+
+        try (BufferedReader in = open(input);
+             RecordWriter out = new RecordWriter(output, RecordWriter.POSITIONS)) {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                String[] fields = line.trim().split("\\s+");
+
+                if (fields.length < 2 || !board.setCells(fields[0])) {
+                    throw new IOException("Malformed position: " + line);
+                }
+
+                if (fields[1].equals("b") || fields[1].equals("w")) {
+                    record.setPosition(board, fields[1].equals("w") ? Board.WHITE : Board.BLACK);
+                } else {
+                    int black = Long.bitCount(board.getStones(Board.BLACK));
+                    int white = Long.bitCount(board.getStones(Board.WHITE));
+                    double score;
+
+                    try {
+                        score = Double.parseDouble(fields[1]);
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Malformed position: " + line);
+                    }
+
+                    record.setPosition(board, (black > white) ? Board.WHITE : Board.BLACK);
+                    record.setResult((score > 0.5) ? Board.WHITE : (score < 0.5) ? Board.BLACK : Board.TIE);
+                }
+
+                out.write(record);
+                report(++count);
+            }
+        }
+
+        System.out.println(count + " positions converted");
+    }
+
+    /**
+     * Converts text games into a record file of games, replaying each game
+     * to check its moves and find its result.
+     * @param input the text games
+     * @param output the record file to write
+     * @throws IOException if either file cannot be used, or a line is
+     * malformed or holds an illegal move
+     */
+    private static void convertGames(final File input, final File output) throws IOException {
+        GameRecord record = new GameRecord();
+        long count = 0;
+
+        try (BufferedReader in = open(input);
+             RecordWriter out = new RecordWriter(output, RecordWriter.GAMES)) {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                String[] tokens = line.trim().split("\\s+");
+
+                if (!tokens[0].equals("b") && !tokens[0].equals("w")) {
+                    throw new IOException("Malformed game: " + line);
+                }
+
+                byte turn = tokens[0].equals("w") ? Board.WHITE : Board.BLACK;
+                Board board = new Board();
+                record.clear(turn);
+
+                for (int i = 1; i < tokens.length; i++) {
+                    String notation = tokens[i];
+
+                    if (i + 1 < tokens.length && tokens[i + 1].indexOf('/') < 0) {
+                        i++;
+                        notation += " " + tokens[i];
+                    }
+
+                    int move = Move.parse(notation);
+
+                    if (move == Move.NONE
+                            || board.getResult() != Board.UNFINISHED
+                            || board.getCell(Move.cell(move)) != Board.EMPTY) {
+                        throw new IOException("Illegal move " + notation + " in game: " + line);
+                    }
+
+                    Move.play(board, turn, move);
+                    record.addMove(move);
+                    turn = Board.oppositeColor(turn);
+                }
+
+                record.setResult(board.getResult());
+                out.write(record);
+                report(++count);
+            }
+        }
+
+        System.out.println(count + " games converted");
+    }
+
+    /**
+     * Writes every record of a record file to standard output as text.
+     * @param input the record file
+     * @throws IOException if the file cannot be read
+     */
+    private static void dump(final File input) throws IOException {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+
+        try (RecordReader in = new RecordReader(input)) {
+            if (in.getType() == RecordWriter.POSITIONS) {
+                Board board = new Board();
+                PositionRecord record = new PositionRecord();
+
+                while (in.read(record)) {
+                    byte turn = record.getPosition(board);
+
+                    out.println(board.toCells()
+                                + " " + colorName(turn)
+                                + " " + resultName(record.getResult())
+                                + " " + record.getScore()
+                                + " " + record.getDepth()
+                                + ((record.getMove() == Move.NONE) ? "" : " " + Move.toNotation(record.getMove())));
+                }
+            } else {
+                GameRecord record = new GameRecord();
+
+                while (in.read(record)) {
+                    StringBuilder line = new StringBuilder(colorName(record.getFirst()));
+
+                    for (int i = 0; i < record.getLength(); i++) {
+                        line.append(' ').append(Move.toNotation(record.getMove(i)));
+                    }
+
+                    out.println(line.append(' ').append(resultName(record.getResult())));
+                }
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * Opens a text file for reading.
+     * @param input the file
+     * @return the reader
+     * @throws IOException if the file cannot be read
+     */
+    private static BufferedReader open(final File input) throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(input), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Names a color as in the text notations.
+     * @param color Board.BLACK or Board.WHITE
+     * @return b or w
+     */
+    private static String colorName(final byte color) {
+        return (color == Board.WHITE) ? "w" : "b";
+    }
+
+    /**
+     * Names a game result.
+     * @param result the result, as given by Board.getResult
+     * @return white, black, tie or unfinished
+     */
+    private static String resultName(final byte result) {
+        if (result == Board.WHITE) {
+            return "white";
+        } else if (result == Board.BLACK) {
+            return "black";
+        } else if (result == Board.TIE) {
+            return "tie";
+        }
+
+        return "unfinished";
+    }
+
+    /**
+     * Reports progress every REPORT_INTERVAL records.
+     * @param count the number of records converted so far
+     */
+    private static void report(final long count) {
+        if (count % REPORT_INTERVAL == 0) {
+            System.out.println(count + " records converted");
+        }
+    }
+}
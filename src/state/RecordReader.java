@@ -0,0 +1,190 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a record file written by RecordWriter, one record at a time into a
+ * record supplied by the caller, so that a file of any size can be streamed
+ * without allocating per record.
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+public class RecordReader implements Closeable {
+    /**
+     * The file being read.
+     */
+    private final RandomAccessFile file;
+    /**
+     * The channel of the file.
+     */
+    private final FileChannel channel;
+    /**
+     * The bytes read from the file but not yet decoded.
+     */
+    private final ByteBuffer buffer;
+    /**
+     * The type of the records in the file.
+     */
+    private final byte type;
+
+    /**
+     * Opens a record file.
+     * @param path the file to read
+     * @throws IOException if the file cannot be read or is not a record file
+     */
+    public RecordReader(final File path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        channel = file.getChannel();
+        buffer = ByteBuffer.allocateDirect(RecordWriter.BUFFER_BYTES);
+        buffer.flip();
+
+        try {
+            if (!fill(RecordWriter.HEADER_BYTES)
+                    || buffer.getInt() != RecordWriter.MAGIC
+                    || buffer.get() != RecordWriter.VERSION) {
+                throw new IOException("Not a record file");
+            }
+
+            type = buffer.get();
+            buffer.getShort();
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks whether a file is a record file, by its first bytes.
+     * @param path the file
+     * @return whether the file starts as a record file does
+     */
+    public static boolean isRecordFile(final File path) {
+        try (RandomAccessFile raf = new RandomAccessFile(path, "r")) {
+            return raf.length() >= RecordWriter.HEADER_BYTES && raf.readInt() == RecordWriter.MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the type of the records in the file.
+     * @return RecordWriter.POSITIONS or RecordWriter.GAMES
+     */
+    public byte getType() {
+        return type;
+    }
+
+    /**
+     * Reads the next position record.
+     * @param record the record to receive the contents
+     * @return false if there are no more records
+     * @throws IOException if the file cannot be read or is truncated
+     */
+    public boolean read(final PositionRecord record) throws IOException {
+        expect(RecordWriter.POSITIONS);
+
+        if (!fill(RecordWriter.POSITION_BYTES)) {
+            return false;
+        }
+
+        record.setPackedPosition(buffer.getLong());
+        record.setScore(buffer.getFloat());
+        record.setMove(buffer.getShort() & TranspositionTable.NO_MOVE);
+        record.setResult(buffer.get());
+        record.setDepth(buffer.get() & RecordWriter.BYTE_MASK);
+
+        return true;
+    }
+
+    /**
+     * Reads the next game record.
+     * @param record the record to receive the contents
+     * @return false if there are no more records
+     * @throws IOException if the file cannot be read or is truncated
+     */
+    public boolean read(final GameRecord record) throws IOException {
+        expect(RecordWriter.GAMES);
+
+        if (!fill(RecordWriter.GAME_HEADER_BYTES)) {
+            return false;
+        }
+
+        record.clear(buffer.get());
+        record.setResult(buffer.get());
+        int length = buffer.get() & RecordWriter.BYTE_MASK;
+
+        if (!fill(RecordWriter.MOVE_BYTES * length)) {
+            throw new EOFException("Truncated game record");
+        }
+
+        for (int i = 0; i < length; i++) {
+            record.addMove(buffer.getShort() & TranspositionTable.NO_MOVE);
+        }
+
+        return true;
+    }
+
+    /**
+     * Closes the file.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Checks that records of a given type may be read from the file.
+     * @param expected the type of the record to be read
+     */
+    private void expect(final byte expected) {
+        if (type != expected) {
+            throw new IllegalStateException("Wrong record type for this file");
+        }
+    }
+
+    /**
+     * Makes sure the buffer holds at least a given number of bytes, reading
+     * more from the file if needed.
+     * @param bytes the number of bytes needed
+     * @return false if the file ended cleanly before any of the bytes
+     * @throws IOException if the file cannot be read or ends partway through
+     * the bytes
+     */
+    private boolean fill(final int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return true;
+        }
+
+        buffer.compact();
+        try {
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+        } finally {
+            buffer.flip();
+        }
+
+        if (buffer.remaining() >= bytes) {
+            return true;
+        } else if (buffer.remaining() == 0) {
+            return false;
+        }
+
+        throw new EOFException("Truncated record file");
+    }
+}
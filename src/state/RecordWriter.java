@@ -0,0 +1,189 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes a record file: a stream of either position records or game records,
+ * buffered so that millions of records cost few system calls. Record files
+ * are the common format for positions and games passed between the tools.
+ * <p>
+ * File layout: the int MAGIC, the byte VERSION, the byte record type and two
+ * reserved bytes, then the records. A position record is the long packed
+ * position, the float score, the short packed move, the byte result and the
+ * byte depth. A game record is the byte first color, the byte result and the
+ * byte number of moves, then a short packed move per move.
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+public class RecordWriter implements Closeable {
+    /**
+     * The first four bytes of every record file.
+     */
+    public static final int MAGIC = 0x50524543;
+    /**
+     * The version of the file layout.
+     */
+    public static final byte VERSION = 1;
+    /**
+     * The record type of a file of position records.
+     */
+    public static final byte POSITIONS = 1;
+    /**
+     * The record type of a file of game records.
+     */
+    public static final byte GAMES = 2;
+    /**
+     * The number of bytes before the first record.
+     */
+    static final int HEADER_BYTES = 8;
+    /**
+     * The number of bytes in a position record.
+     */
+    static final int POSITION_BYTES = 16;
+    /**
+     * The number of bytes in a game record before its moves.
+     */
+    static final int GAME_HEADER_BYTES = 3;
+    /**
+     * The number of bytes taken by each move of a game record.
+     */
+    static final int MOVE_BYTES = 2;
+    /**
+     * The number of bytes buffered between writes to the file.
+     */
+    static final int BUFFER_BYTES = 1 << 16;
+    /**
+     * The largest value stored in a byte field of a record.
+     */
+    static final int BYTE_MASK = 0xFF;
+
+    /**
+     * The file being written.
+     */
+    private final RandomAccessFile file;
+    /**
+     * The channel of the file.
+     */
+    private final FileChannel channel;
+    /**
+     * The records not yet written to the file.
+     */
+    private final ByteBuffer buffer;
+    /**
+     * The type of the records in the file.
+     */
+    private final byte type;
+
+    /**
+     * Creates a record file, replacing any file already there.
+     * @param path the file to write
+     * @param type POSITIONS or GAMES
+     * @throws IOException if the file cannot be written
+     */
+    public RecordWriter(final File path, final byte type) throws IOException {
+        if (type != POSITIONS && type != GAMES) {
+            throw new IllegalArgumentException("Unknown record type " + type);
+        }
+
+        file = new RandomAccessFile(path, "rw");
+        channel = file.getChannel();
+        channel.truncate(0);
+        buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        this.type = type;
+
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        buffer.put(type);
+        buffer.putShort((short) 0);
+    }
+
+    /**
+     * Writes a position record.
+     * @param record the record
+     * @throws IOException if the file cannot be written
+     */
+    public void write(final PositionRecord record) throws IOException {
+        expect(POSITIONS);
+        reserve(POSITION_BYTES);
+
+        buffer.putLong(record.getPackedPosition());
+        buffer.putFloat(record.getScore());
+        buffer.putShort((short) record.getMove());
+        buffer.put(record.getResult());
+        buffer.put((byte) Math.min(record.getDepth(), BYTE_MASK));
+    }
+
+    /**
+     * Writes a game record.
+     * @param record the record
+     * @throws IOException if the file cannot be written
+     */
+    public void write(final GameRecord record) throws IOException {
+        expect(GAMES);
+        reserve(GAME_HEADER_BYTES + MOVE_BYTES * record.getLength());
+
+        buffer.put(record.getFirst());
+        buffer.put(record.getResult());
+        buffer.put((byte) record.getLength());
+        for (int i = 0; i < record.getLength(); i++) {
+            buffer.putShort((short) record.getMove(i));
+        }
+    }
+
+    /**
+     * Writes any buffered records and closes the file.
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Checks that records of a given type may be written to the file.
+     * @param expected the type of the record to be written
+     */
+    private void expect(final byte expected) {
+        if (type != expected) {
+            throw new IllegalStateException("Wrong record type for this file");
+        }
+    }
+
+    /**
+     * Makes room in the buffer for a record.
+     * @param bytes the size of the record
+     * @throws IOException if the file cannot be written
+     */
+    private void reserve(final int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain();
+        }
+    }
+
+    /**
+     * Writes the buffer's contents to the file and empties it.
+     * @throws IOException if the file cannot be written
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -7,7 +7,12 @@
 package state;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The object that performs game tree searches to produce an AI move.
@@ -19,11 +24,340 @@ public class Search {
      * Determines whether to use alpha beta search
      */
     public static final boolean USE_ALPHA_BETA = true;
+    /**
+     * Determines whether to use the transposition table
+     */
+    public static final boolean USE_TRANSPOSITION_TABLE = true;
+    /**
+     * Determines whether to skip children identical or symmetric to a child
+     * already searched from the same node
+     */
+    public static final boolean SKIP_DUPLICATE_CHILDREN = true;
+    /**
+     * Determines whether to use principal variation search, searching every
+     * child after the first with a null window and re-searching on fail-high.
+     * Only takes effect along with USE_ALPHA_BETA.
+     */
+    public static final boolean USE_PVS = true;
+    /**
+     * Determines whether to search each iteration after the first with a
+     * window around the previous iteration's score. Only takes effect along
+     * with USE_ALPHA_BETA.
+     */
+    public static final boolean USE_ASPIRATION_WINDOWS = true;
+    /**
+     * The score of a win at the root within the search. A win is scored as
+     * MATE_SCORE less its distance in plies from the root, so that quicker
+     * wins and slower losses are preferred.
+     */
+    private static final int MATE_SCORE = 1 << 22;
+    /**
+     * The score of a tie within the search. No heuristic score is ever
+     * equal to it, so a root scored as a tie reaches a tie within the depth
+     * searched, although a deeper search may still find a win.
+     */
+    private static final int DRAW_SCORE = 0;
+    /**
+     * The score beyond any score within the search, bounding the window of
+     * a search with no bounds.
+     */
+    private static final int INFINITE_SCORE = MATE_SCORE + 1;
+    /**
+     * The greatest number of units a fixed-point score uses for one unit of
+     * the scoring weights.
+     */
+    private static final double MAX_SCORE_SCALE = 1 << 16;
+    /**
+     * The greatest distance from the root to any node, since every move fills
+     * a cell.
+     */
+    private static final int MAX_PLY = Board.BOARD_SIZE + 1;
+    /**
+     * The least score of a win within the search.
+     */
+    private static final int MIN_MATE_SCORE = MATE_SCORE - MAX_PLY;
+    /**
+     * The greatest magnitude of the evaluation of an unfinished game, which
+     * the fixed-point scale is chosen to respect.
+     */
+    private static final int MAX_EVAL_SCORE = MIN_MATE_SCORE - 1;
+    /**
+     * The number of nodes expanded between checks of the time budget, less
+     * one. Must be one less than a power of two.
+     */
+    private static final int BUDGET_CHECK_MASK = 0x3FF;
+    /**
+     * The distance on either side of the previous iteration's score at which
+     * an aspiration window starts, in units of the scoring weights.
+     */
+    private static final int ASPIRATION_WINDOW = 8;
+    /**
+     * The factor by which a side of an aspiration window widens each time
+     * the score falls outside it.
+     */
+    private static final int ASPIRATION_GROWTH = 4;
+    /**
+     * The widest an aspiration window side grows before it is dropped
+     * altogether, in units of the scoring weights.
+     */
+    private static final int ASPIRATION_LIMIT = 256;
+    /**
+     * The number of plies nearest the root at which placements are ranked by
+     * their static evaluations before the history table is consulted.
+     */
+    private static final int EVAL_ORDERING_PLIES = 2;
+    /**
+     * The number of killer moves remembered for each ply.
+     */
+    private static final int NUM_KILLERS = 2;
+    /**
+     * The ordering score of the transposition table's or principal
+     * variation's move, tried before any other.
+     */
+    private static final int HASH_MOVE_SCORE = Integer.MAX_VALUE;
+    /**
+     * The ordering score of the most recent killer move, tried after the
+     * hash move. The older killer scores one less.
+     */
+    private static final int KILLER_SCORE = Integer.MAX_VALUE - 1;
+    /**
+     * The history score above which every history score is halved, so that
+     * recent cutoffs count for more than old ones.
+     */
+    private static final int HISTORY_LIMIT = 1 << 20;
+    /**
+     * The position of a rotation's static evaluation rank, among the moves
+     * placing on the same cell, within the ordering score of moves near the
+     * root, above any history score.
+     */
+    private static final int ROTATION_RANK_SHIFT = 21;
+    /**
+     * The position of a placement's static evaluation rank within the
+     * ordering score of moves near the root, above any rotation rank.
+     */
+    private static final int CELL_RANK_SHIFT = 24;
+    /**
+     * The number of nanoseconds in a millisecond.
+     */
+    private static final long NANOS_PER_MILLI = 1000000;
+    /**
+     * The number of empty cells at or below which iterative deepening
+     * searches hand the position to the endgame solver by default.
+     */
+    public static final int DEFAULT_ENDGAME_EMPTY_CELLS = 8;
+    /**
+     * The number of plies of forcing moves searched beyond the depth limit
+     * by default.
+     */
+    public static final int DEFAULT_QUIESCENCE_PLIES = 4;
+    /**
+     * The number of children searched at full depth before late move
+     * reductions begin, by default.
+     */
+    public static final int DEFAULT_LATE_MOVE_REDUCTIONS = 3;
+    /**
+     * The futility margin per ply of depth remaining, by default.
+     */
+    public static final double DEFAULT_FUTILITY_MARGIN = 0;
+    /**
+     * The least depth remaining at which children are reduced.
+     */
+    private static final int REDUCTION_MIN_DEPTH = 3;
+    /**
+     * The greatest depth remaining at which children are pruned as futile.
+     */
+    private static final int FUTILITY_MAX_DEPTH = 2;
 
     /**
      * Counts the number of nodes expanded
      */
-    private int count;
+    private long count;
+    /**
+     * The counts kept by the last search on this object's thread.
+     */
+    private final SearchStats stats;
+
+    /**
+     * The time, as given by System.nanoTime, after which the current search
+     * is abandoned.
+     */
+    private volatile long deadline;
+    /**
+     * The number of nodes after which the current search is abandoned.
+     */
+    private long nodeBudget;
+    /**
+     * Whether the current search may be abandoned, which is only the case
+     * once at least one iteration has completed.
+     */
+    private boolean abortable;
+    /**
+     * Whether the current search has been abandoned partway through.
+     */
+    private boolean aborted;
+    /**
+     * Whether another thread has asked for the current search to stop.
+     */
+    private volatile boolean stopRequested;
+    /**
+     * The depth of the current iteration at the root.
+     */
+    private int rootDepth;
+    /**
+     * The depth of the deepest iteration completed by the last search.
+     */
+    private int completedDepth;
+    /**
+     * The packed moves of the principal variation found by the last
+     * completed iteration.
+     */
+    private final int[] principalVariation;
+    /**
+     * The number of moves in principalVariation.
+     */
+    private int pvLength;
+    /**
+     * Whether the node being searched lies on the previous iteration's
+     * principal variation.
+     */
+    private boolean followPv;
+
+    /**
+     * The number of threads that search in parallel during an iterative
+     * deepening search.
+     */
+    private int threadCount;
+    /**
+     * The searches run by the helper threads, which share this search's
+     * transposition table.
+     */
+    private Search[] helpers;
+    /**
+     * The threads on which the helpers run, or null if none have been
+     * needed yet.
+     */
+    private ExecutorService helperPool;
+    /**
+     * The result of the last iterative deepening search run by this search
+     * as a helper.
+     */
+    private NodeEval helperResult;
+    /**
+     * The thread on which pondering searches run, or null if none have been
+     * needed yet.
+     */
+    private ExecutorService ponderPool;
+    /**
+     * The pondering search in progress, or null if this search is not
+     * pondering.
+     */
+    private Future<NodeEval> ponderResult;
+    /**
+     * The black stones of the position being pondered.
+     */
+    private long ponderBlack;
+    /**
+     * The white stones of the position being pondered.
+     */
+    private long ponderWhite;
+    /**
+     * The color on-move in the position being pondered.
+     */
+    private byte ponderTurn;
+
+    /**
+     * The book of early positions consulted before searching, or null.
+     */
+    private OpeningBook book;
+    /**
+     * The number of empty cells at or below which positions are solved
+     * exactly rather than searched, or 0 to always search.
+     */
+    private int endgameEmptyCells;
+    /**
+     * The solver for positions with few empty cells, or null if none has
+     * been needed yet.
+     */
+    private EndgameSolver endgameSolver;
+    /**
+     * The number of plies of forcing moves searched beyond the depth limit,
+     * or 0 to evaluate every node at the depth limit statically.
+     */
+    private int quiescencePlies;
+    /**
+     * The number of children searched at full depth before the rest are
+     * searched a ply shallower, or 0 to never reduce.
+     */
+    private int lateMoveReductions;
+    /**
+     * The futility margin per ply of depth remaining, or 0 to never prune.
+     */
+    private double futilityMargin;
+    /**
+     * Whether a reduced child that fails high is searched again at full
+     * depth before its score is trusted.
+     */
+    private boolean reductionResearch;
+    /**
+     * The table of previously searched positions, kept between searches.
+     */
+    private final TranspositionTable table;
+    /**
+     * The canonical hashes of the children already searched from the node
+     * being searched at each depth.
+     */
+    private final KeySet[] childKeys;
+    /**
+     * The moves available from the node being searched at each ply.
+     */
+    private final int[][] moveLists;
+    /**
+     * The ordering scores of the moves in moveLists. Moves are tried from
+     * the highest score to the lowest.
+     */
+    private final int[][] moveScores;
+    /**
+     * The last two moves at each ply to cause a beta cutoff, most recent
+     * first, or Move.NONE.
+     */
+    private final int[][] killers;
+    /**
+     * The history table: how often and how deep each move, indexed by its
+     * cell and then by its rotation, has caused a beta cutoff.
+     */
+    private final int[][] history;
+    /**
+     * The empty cells ordered by their static evaluations, used near the root.
+     */
+    private final int[] rankedCells;
+    /**
+     * The static evaluations of the cells in rankedCells.
+     */
+    private final int[] rankedScores;
+    /**
+     * The static evaluation after a placement on each cell, filled by
+     * Board.placementEvaluations.
+     */
+    private final int[] placementScores;
+    /**
+     * The static evaluation rank of each empty cell, the best having the
+     * highest rank.
+     */
+    private final int[] cellRanks;
+    /**
+     * The static evaluation after each move placing on a cell, by rotation
+     * number, filled by Board.rotationEvaluations.
+     */
+    private final int[] rotationScores;
+    /**
+     * The static evaluation rank of each move placing on a cell, by
+     * rotation number, the best having the highest rank.
+     */
+    private final int[] rotationRanks;
+    /**
+     * The best move found so far at the root of the current iteration.
+     */
+    private int rootMove;
     
     /**
      * the scoring weights used assign value to each possible
@@ -32,145 +366,1531 @@ public class Search {
      * with j cells already filled in.
      */
     private double[][] streakScores;
+    /**
+     * The score of each line pattern in fixed point, built from the
+     * weights in streakScores times scoreScale, rounded.
+     */
+    private final int[] lineScores;
+    /**
+     * The number of fixed-point units to one unit of the scoring weights, a
+     * power of two chosen so that no evaluation can reach the score of a win.
+     */
+    private final double scoreScale;
 
     /**
      * Constructs a new Search object to search for a best move.
      * @param streakScores the weights to score each possible streak type
      */
     public Search(final double[][] streakScores) {
+        this(streakScores, new TranspositionTable());
+    }
+
+    /**
+     * Constructs a new Search object to search for a best move.
+     * @param streakScores the weights to score each possible streak type
+     * @param table the transposition table in which to remember positions
+     */
+    public Search(final double[][] streakScores, final TranspositionTable table) {
         this.streakScores = streakScores;
+        this.table = table;
+        scoreScale = scoreScale(streakScores);
+        int[][] weights = new int[streakScores.length][];
+        for (int i = 0; i < streakScores.length; i++) {
+            weights[i] = new int[streakScores[i].length];
+            for (int j = 0; j < streakScores[i].length; j++) {
+                weights[i][j] = (int) Math.round(streakScores[i][j] * scoreScale);
+            }
+        }
+        lineScores = Board.lineScores(weights);
+        childKeys = new KeySet[MAX_PLY];
+        moveLists = new int[MAX_PLY][Board.BOARD_SIZE * Move.NUM_ROTATIONS];
+        moveScores = new int[MAX_PLY][Board.BOARD_SIZE * Move.NUM_ROTATIONS];
+        killers = new int[MAX_PLY][NUM_KILLERS];
+        history = new int[Board.BOARD_SIZE][Move.NUM_ROTATIONS];
+        for (int[] plyKillers : killers) {
+            Arrays.fill(plyKillers, Move.NONE);
+        }
+        rankedCells = new int[Board.BOARD_SIZE];
+        rankedScores = new int[Board.BOARD_SIZE];
+        placementScores = new int[Board.BOARD_SIZE];
+        cellRanks = new int[Board.BOARD_SIZE];
+        rotationScores = new int[Move.NUM_ROTATIONS];
+        rotationRanks = new int[Move.NUM_ROTATIONS];
+        for (int i = 0; i < MAX_PLY; i++) {
+            childKeys[i] = new KeySet();
+        }
+        principalVariation = new int[Board.BOARD_SIZE];
+        pvLength = 0;
         count = 0;
+        stats = new SearchStats();
+        threadCount = 1;
+        helpers = new Search[0];
+        endgameEmptyCells = DEFAULT_ENDGAME_EMPTY_CELLS;
+        quiescencePlies = DEFAULT_QUIESCENCE_PLIES;
+        lateMoveReductions = DEFAULT_LATE_MOVE_REDUCTIONS;
+        futilityMargin = DEFAULT_FUTILITY_MARGIN;
+        reductionResearch = true;
+        resetBudget();
     }
 
     /**
-     * Evaluates a given board state at a given depth using minimax or alpha-beta search.
-     * @param board the board state to evaluate
-     * @param turn the color of the player on-move
-     * @param depth the depth at which to evaluate the board
-     * @param alpha the alpha parameter for alpha-beta search
-     * @param beta the beta parameter for alpha-beta search
-     * @return an evaluation and move recommendation for the position
+     * Chooses the fixed-point scale for a set of scoring weights: the
+     * greatest power of two, up to MAX_SCORE_SCALE, at which the evaluation
+     * of any unfinished game stays within MAX_EVAL_SCORE.
+     * @param streakScores the scoring weights
+     * @return the number of fixed-point units to one unit of the weights
      */
-    public NodeEval evaluateAtDepth(final Board board,
-                                     final byte turn,
-                                     final int depth,
-                                           NodeEval alpha,
-                                           NodeEval beta) {
-        count++;
-
-        double initialEval = board.evaluation(streakScores);
+    private static double scoreScale(final double[][] streakScores) {
+        double largest = 0;
+        for (double[] row : streakScores) {
+            for (double weight : row) {
+                largest = Math.max(largest, Math.abs(weight));
+            }
+        }
 
-        if (depth == 0
-            || !Double.isFinite(initialEval)) {
-            return new NodeEval(initialEval, depth, new int[] {-1, -1}, -1, 0);
+        if (largest == 0) {
+            return MAX_SCORE_SCALE;
         }
 
-        NodeEval bestEval = null;
+        double limit = MAX_EVAL_SCORE / (Board.MAX_EVAL_TERMS * largest);
 
-        int dir = (turn == Board.WHITE) ? 1 : -1;
-        double winEval = dir * Board.MAX_EVAL;
+        return Math.min(MAX_SCORE_SCALE, Math.scalb(1.0, Math.getExponent(limit)));
+    }
 
-        List<int[]> moves = getMoves(board, turn, dir);
+    /**
+     * Sets the number of threads used by iterative deepening searches. Each
+     * extra thread runs its own search on its own copy of the board, sharing
+     * only the transposition table, so that the threads steer each other
+     * towards different parts of the tree (the "lazy SMP" scheme).
+     * @param threads the number of threads, at least 1
+     */
+    public void setThreadCount(final int threads) {
+        threadCount = Math.max(threads, 1);
 
-        for (int[] loc : moves) {
-            if (board.getLocation(loc) == Board.EMPTY) {
-                board.setLocation(loc, turn);
-                if (board.evaluation(streakScores) == winEval) {
-                    bestEval = new NodeEval(winEval, 0, loc, -1, 0);
-                    board.clearLocation(loc);
+        if (helpers.length != threadCount - 1) {
+            if (helperPool != null) {
+                helperPool.shutdown();
+                helperPool = null;
+            }
 
-                    return bestEval;
-                } else {
-                    for (int quad = 0; quad < 4; quad++) {
-                        int curRot = 0;
-
-                        for (int rot = -1; rot <= 1; rot += 2) {
-                            board.rotateQuadrant(quad, rot - curRot);
-                            byte newColor = Board.oppositeColor(turn);
-
-                            NodeEval newEval = evaluateAtDepth(board,
-                                                             newColor,
-                                                             depth - 1,
-                                                             alpha,
-                                                             beta);
-
-                            if (bestEval == null || dir * newEval.compareTo(bestEval) > 0) {
-                                newEval.loc = loc;
-                                newEval.quad = quad;
-                                newEval.rot = rot;
-
-                                bestEval = newEval;
-
-                                if (USE_ALPHA_BETA) {
-                                    if (turn == Board.WHITE) {
-                                        if (newEval.compareTo(alpha) > 0) {
-                                            alpha = newEval;
-                                        }
-                                    } else {
-                                        if (newEval.compareTo(beta) < 0) {
-                                            beta = newEval;
-                                        }
-                                    }
-                                }
-                            }
-
-                            curRot = rot;
-
-                            if (USE_ALPHA_BETA && alpha.compareTo(beta) >= 0) {
-                                board.rotateQuadrant(quad, -curRot);
-                                board.clearLocation(loc);
-
-                                return bestEval;
-                            }
+            helpers = new Search[threadCount - 1];
+            for (int i = 0; i < helpers.length; i++) {
+                helpers[i] = new Search(streakScores, table);
+                helpers[i].copySettings(this);
+            }
+        }
+    }
 
-                        }
-                        board.rotateQuadrant(quad, -curRot);
+    /**
+     * Sets the opening book consulted by iterative deepening searches before
+     * they search. A position found in the book is answered from it at once.
+     * @param book the opening book, or null for none
+     */
+    public void setOpeningBook(final OpeningBook book) {
+        this.book = book;
+    }
 
-                    }
-                }
+    /**
+     * Sets the number of empty cells at or below which iterative deepening
+     * searches solve the position exactly with an EndgameSolver instead of
+     * searching it with the heuristic evaluation. The solver plays the
+     * fastest win it can prove, and the slowest loss. A solve abandoned for
+     * lack of time falls back on the heuristic search.
+     * @param emptyCells the number of empty cells, or 0 to always search
+     */
+    public void setEndgameEmptyCells(final int emptyCells) {
+        endgameEmptyCells = Math.max(emptyCells, 0);
+    }
 
+    /**
+     * Sets the number of plies of forcing moves searched beyond the depth
+     * limit. Rather than being evaluated statically, a node at the depth
+     * limit is scored as a win if the player on-move can complete a
+     * five-in-a-row, by placement alone or with a rotation, and otherwise
+     * the player on-move tries only the placements that stop the other
+     * player's threats, with every rotation, until no threats remain or
+     * the plies run out.
+     * @param plies the number of plies, or 0 for none
+     */
+    public void setQuiescencePlies(final int plies) {
+        quiescencePlies = Math.max(0, Math.min(plies, Board.BOARD_SIZE));
+        for (Search helper : helpers) {
+            helper.copySettings(this);
+        }
+    }
 
-                board.clearLocation(loc);
-            }
+    /**
+     * Sets how many children of each node are searched at full depth before
+     * late move reductions begin. Once that many have been searched, the
+     * rest are searched a ply shallower with a null window, as long as the
+     * node has depth to spare, neither player threatens to complete a
+     * five-in-a-row and the child is neither the hash move nor a killer.
+     * @param moves the number of children searched at full depth, or 0 to
+     * never reduce
+     */
+    public void setLateMoveReductions(final int moves) {
+        lateMoveReductions = Math.max(moves, 0);
+        for (Search helper : helpers) {
+            helper.copySettings(this);
+        }
+    }
+
+    /**
+     * Sets the futility margin. Near the depth limit, once one child has been
+     * searched, the remaining children of a node without threats are pruned
+     * if the static evaluation falls short of the player on-move's bound by
+     * more than the margin times the depth remaining.
+     * @param margin the margin per ply, or 0 to never prune
+     */
+    public void setFutilityMargin(final double margin) {
+        futilityMargin = Math.max(margin, 0);
+        for (Search helper : helpers) {
+            helper.copySettings(this);
+        }
+    }
+
+    /**
+     * Sets whether a reduced child that fails high is searched again at
+     * full depth before its score is trusted.
+     * @param research whether to search again
+     */
+    public void setReductionResearch(final boolean research) {
+        reductionResearch = research;
+        for (Search helper : helpers) {
+            helper.copySettings(this);
         }
+    }
 
-        return bestEval;
+    /**
+     * Copies the settings of another search that shape the tree searched,
+     * so that helper threads search as their main search does.
+     * @param other the search whose settings to copy
+     */
+    private void copySettings(final Search other) {
+        quiescencePlies = other.quiescencePlies;
+        lateMoveReductions = other.lateMoveReductions;
+        futilityMargin = other.futilityMargin;
+        reductionResearch = other.reductionResearch;
     }
 
     /**
-     * Gets the moves without rotation possible from a given board state,
-     * ordered by their 0-depth evaluations.
-     * @param board the board state from which the moves are to be made
+     * Gets the number of threads used by iterative deepening searches.
+     * @return the number of threads
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Searches for the best move for the player on-move. Positions remembered
+     * from earlier searches with this object are reused.
+     * @param board the board state to search from
      * @param turn the color of the player on-move
-     * @param dir the sign of the evaluation that would favor the player on-move
-     * @return a list of moves ordered by their 0-depth evaluations
+     * @param depth the depth to which to search
+     * @return an evaluation and move recommendation for the position
      */
-    private List<int[]> getMoves(final Board board,
-                                 final byte turn,
-                                 final int dir) {
-        List<int[]> temp = new ArrayList<>();
-        List<Double> scores = new ArrayList<>();
-        List<Integer> indices = new ArrayList<>();
+    public NodeEval findBestMove(final Board board, final byte turn, final int depth) {
+        stopPondering();
+        table.newSearch();
+        resetBudget();
+        startOrdering();
+        count = 0;
+        stats.clear();
+        rootDepth = depth;
+        completedDepth = depth;
+        pvLength = 0;
+        followPv = false;
+
+        long start = System.nanoTime();
+        NodeEval best = evaluateAtDepth(board,
+                                        turn,
+                                        depth,
+                                        new NodeEval(Board.MIN_EVAL, Integer.MAX_VALUE, null, 0, 0),
+                                        new NodeEval(Board.MAX_EVAL, Integer.MAX_VALUE, null, 0, 0));
+
+        stats.iterationNodes[depth] = count;
+        stats.completedDepth = depth;
+        stats.elapsedNanos = System.nanoTime() - start;
+
+        return best;
+    }
 
-        for (int y = 0; y < Board.BOARD_HEIGHT; y++) {
-            for (int x = 0; x < Board.BOARD_WIDTH; x++) {
-                if (board.getLocation(new int[] {x, y}) == Board.EMPTY) {
-                    int[] move = {x, y};
-                    temp.add(move);
-                    board.setLocation(move, turn);
-                    scores.add(-dir * board.evaluation(streakScores));
-                    board.clearLocation(move);
-                    indices.add(indices.size());
+    /**
+     * Searches for the best move for the player on-move by iterative
+     * deepening: the position is searched to depth 1, 2, 3 and so on until
+     * the budget runs out, each iteration trying the previous iteration's
+     * principal variation first. An iteration cut short by the budget is
+     * discarded, except that the first iteration always completes. Positions
+     * in the opening book are answered from the book, and positions with few
+     * enough empty cells are solved exactly instead, unless the solve is
+     * stopped or outlasts the time budget, in which case the position is
+     * searched after all. A search that continues a pondering search keeps
+     * the pondering search's depth limit and has no node limit.
+     * @param board the board state to search from
+     * @param turn the color of the player on-move
+     * @param maxDepth the deepest iteration to search
+     * @param timeBudget the number of milliseconds to search for, or 0 for
+     * no time limit
+     * @param nodeBudget the number of nodes to expand, or 0 for no node limit
+     * @return an evaluation and move recommendation from the deepest
+     * completed iteration
+     */
+    public NodeEval findBestMove(final Board board,
+                                 final byte turn,
+                                 final int maxDepth,
+                                 final long timeBudget,
+                                 final long nodeBudget) {
+        if (ponderResult != null) {
+            if (board.getStones(Board.BLACK) == ponderBlack
+                    && board.getStones(Board.WHITE) == ponderWhite
+                    && turn == ponderTurn) {
+                if (timeBudget > 0) {
+                    deadline = System.nanoTime() + timeBudget * NANOS_PER_MILLI;
                 }
+
+                return awaitPondering();
             }
+
+            stopPondering();
+        }
+
+        prepareIterative();
+        long start = System.nanoTime();
+
+        if (timeBudget > 0) {
+            deadline = start + timeBudget * NANOS_PER_MILLI;
+        }
+        if (nodeBudget > 0) {
+            this.nodeBudget = nodeBudget;
+        }
+
+        return searchIteratively(board, turn, maxDepth, start);
+    }
+
+    /**
+     * Starts an iterative deepening search of a position on a background
+     * thread, with no budget, and returns at once. This is meant for the
+     * opponent's time: the position is the one expected after the
+     * opponent's reply, or the current one with the opponent on-move, so
+     * that the transposition table and move ordering tables are warm when
+     * the opponent's move arrives. The next call to findBestMove continues
+     * the pondering search if it is asked about the same position, giving it
+     * its time budget from then on, and otherwise stops it and searches
+     * afresh with the tables it left. No other method of this search should
+     * be called while it ponders, apart from stop and stopPondering.
+     * @param board the board state to search from, which is copied
+     * @param turn the color of the player on-move
+     * @param maxDepth the deepest iteration to search
+     */
+    public void ponder(final Board board, final byte turn, final int maxDepth) {
+        stopPondering();
+        prepareIterative();
+        long start = System.nanoTime();
+        Board copy = new Board(board);
+
+        ponderBlack = board.getStones(Board.BLACK);
+        ponderWhite = board.getStones(Board.WHITE);
+        ponderTurn = turn;
+
+        if (ponderPool == null) {
+            ponderPool = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "search-ponder");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        ponderResult = ponderPool.submit(() -> searchIteratively(copy, turn, maxDepth, start));
+    }
+
+    /**
+     * Stops any pondering search and waits for it to finish, discarding its
+     * result.
+     */
+    public void stopPondering() {
+        if (ponderResult != null) {
+            stop();
+            awaitPondering();
+            clearStop();
+        }
+    }
+
+    /**
+     * Stops any pondering search and shuts down the threads this search has
+     * started: the helpers', the pondering thread and the endgame solver's.
+     * Should be called once the search is no longer needed, since the
+     * threads otherwise stay idle for as long as the program runs. The
+     * search may still be used afterwards, starting new threads as needed.
+     */
+    public void close() {
+        stopPondering();
+
+        if (helperPool != null) {
+            helperPool.shutdown();
+            helperPool = null;
+        }
+        if (ponderPool != null) {
+            ponderPool.shutdown();
+            ponderPool = null;
         }
+        if (endgameSolver != null) {
+            endgameSolver.close();
+        }
+    }
+
+    /**
+     * Gets the principal variation found by the last search, as far as it
+     * was completed: the recommended move, the expected reply and so on.
+     * @return the packed moves, which may be none
+     */
+    public int[] getPrincipalVariation() {
+        return Arrays.copyOf(principalVariation, pvLength);
+    }
 
-        indices.sort((ind1, ind2) -> Double.compare(scores.get(ind1), scores.get(ind2)));
-        List<int[]> out = new ArrayList<>();
-        for (Integer ind : indices) {
-            out.add(temp.get(ind));
+    /**
+     * Waits for the pondering search to finish. If the calling thread is
+     * interrupted, the search is stopped and still waited for, so that it
+     * never outlives this call.
+     * @return the result of the pondering search
+     */
+    private NodeEval awaitPondering() {
+        boolean interrupted = false;
+
+        try {
+            while (true) {
+                try {
+                    return ponderResult.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    stop();
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            ponderResult = null;
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Clears the tables and counts kept per search before an iterative
+     * deepening search.
+     */
+    private void prepareIterative() {
+        table.newSearch();
+        resetBudget();
+        startOrdering();
+        count = 0;
+        pvLength = 0;
+        stats.clear();
+    }
+
+    /**
+     * Runs an iterative deepening search whose budget has already been set,
+     * answering from the opening book or the endgame solver where they apply.
+     * @param board the board state to search from
+     * @param turn the color of the player on-move
+     * @param maxDepth the deepest iteration to search
+     * @param start the time at which the search started, as given by
+     * System.nanoTime
+     * @return an evaluation and move recommendation from the deepest
+     * completed iteration
+     */
+    private NodeEval searchIteratively(final Board board,
+                                       final byte turn,
+                                       final int maxDepth,
+                                       final long start) {
+        if (book != null) {
+            NodeEval booked = book.lookup(board, turn);
+
+            if (booked != null) {
+                completedDepth = book.depth(board, turn);
+                stats.completedDepth = completedDepth;
+
+                return booked;
+            }
+        }
+
+        if (board.getEmptyCount() <= endgameEmptyCells
+                && board.getResult() == Board.UNFINISHED) {
+            if (endgameSolver == null || endgameSolver.getThreadCount() != threadCount) {
+                if (endgameSolver != null) {
+                    endgameSolver.close();
+                }
+                endgameSolver = new EndgameSolver(threadCount, table.getEntries());
+            }
+
+            EndgameSolver.Solution solution = endgameSolver.solve(board, turn, this::outOfTime);
+
+            if (solution != null) {
+                count = endgameSolver.getNodeCount();
+                stats.solverNodes = count;
+                completedDepth = board.getEmptyCount();
+                stats.completedDepth = completedDepth;
+                stats.elapsedNanos = System.nanoTime() - start;
+
+                return solution.toNodeEval(board);
+            }
+        }
+
+        int lastDepth = Math.min(maxDepth, board.getEmptyCount());
+        List<Future<?>> running = startHelpers(board, turn, lastDepth);
+
+        NodeEval best = deepen(board, turn, 1, lastDepth);
+
+        for (Search helper : helpers) {
+            helper.stop();
+        }
+
+        for (int i = 0; i < running.size(); i++) {
+            try {
+                running.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+
+            stats.add(helpers[i].stats);
+
+            if (helpers[i].helperResult != null
+                    && helpers[i].completedDepth > completedDepth) {
+                best = helpers[i].helperResult;
+                completedDepth = helpers[i].completedDepth;
+                stats.iterationNodes[completedDepth] = helpers[i].stats.iterationNodes[completedDepth];
+            }
+        }
+
+        stats.completedDepth = completedDepth;
+        stats.elapsedNanos = System.nanoTime() - start;
+
+        return best;
+    }
+
+    /**
+     * Starts the helper threads searching the same position as this search.
+     * Every other helper starts one iteration deeper, so that the helpers
+     * spread out over the iterations rather than repeating the same work.
+     * @param board the board state to search from, which each helper copies
+     * @param turn the color of the player on-move
+     * @param lastDepth the deepest iteration to search
+     * @return the running helper searches
+     */
+    private List<Future<?>> startHelpers(final Board board, final byte turn, final int lastDepth) {
+        List<Future<?>> running = new ArrayList<>();
+        if (helpers.length == 0) {
+            return running;
+        }
+
+        if (helperPool == null) {
+            helperPool = Executors.newFixedThreadPool(helpers.length, runnable -> {
+                Thread thread = new Thread(runnable, "search-helper");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        for (int i = 0; i < helpers.length; i++) {
+            Search helper = helpers[i];
+            Board copy = new Board(board);
+            int firstDepth = Math.min(1 + (i + 1) % 2, lastDepth);
+
+            helper.resetBudget();
+            helper.stopRequested = stopRequested;
+            helper.startOrdering();
+            helper.count = 0;
+            helper.stats.clear();
+            helper.deadline = deadline;
+            helper.abortable = true;
+            helper.helperResult = null;
+
+            running.add(helperPool.submit(() -> {
+                helper.helperResult = helper.deepen(copy, turn, firstDepth, lastDepth);
+            }));
+        }
+
+        return running;
+    }
+
+    /**
+     * Runs the iterations of an iterative deepening search.
+     * @param board the board state to search from
+     * @param turn the color of the player on-move
+     * @param firstDepth the depth of the first iteration
+     * @param lastDepth the depth of the last iteration
+     * @return an evaluation and move recommendation from the deepest
+     * completed iteration, or null if none completed
+     */
+    private NodeEval deepen(final Board board,
+                            final byte turn,
+                            final int firstDepth,
+                            final int lastDepth) {
+        NodeEval best = null;
+        pvLength = 0;
+        completedDepth = 0;
+
+        for (int depth = firstDepth; depth <= lastDepth && !(abortable && outOfBudget()); depth++) {
+            rootDepth = depth;
+            long startCount = count;
+
+            boolean aspirate = USE_ASPIRATION_WINDOWS && USE_ALPHA_BETA && best != null;
+            int previous = aspirate ? toScore(best, depth - 1) : 0;
+            int window = (int) Math.max(1, ASPIRATION_WINDOW * scoreScale);
+            int limit = (int) Math.max(1, ASPIRATION_LIMIT * scoreScale);
+            int lowDelta = window;
+            int highDelta = window;
+            int lower = aspirate ? previous - lowDelta : -INFINITE_SCORE;
+            int upper = aspirate ? previous + highDelta : INFINITE_SCORE;
+            int score;
+
+            while (true) {
+                followPv = pvLength > 0;
+                score = searchRoot(board, turn, depth, lower, upper);
+
+                if (aborted) {
+                    break;
+                }
+
+                if (score <= lower && lower != -INFINITE_SCORE) {
+                    lowDelta *= ASPIRATION_GROWTH;
+                    lower = (lowDelta > limit) ? -INFINITE_SCORE : previous - lowDelta;
+                } else if (score >= upper && upper != INFINITE_SCORE) {
+                    highDelta *= ASPIRATION_GROWTH;
+                    upper = (highDelta > limit) ? INFINITE_SCORE : previous + highDelta;
+                } else {
+                    break;
+                }
+
+                stats.aspirationResearches++;
+            }
+
+            if (aborted) {
+                break;
+            }
+
+            best = toNodeEval(score, depth);
+            completedDepth = depth;
+            stats.iterationNodes[depth] = count - startCount;
+            abortable = true;
+            collectPrincipalVariation(board, turn);
+
+            if (Math.abs(score) >= MIN_MATE_SCORE) {
+                break;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Asks the current search, running in another thread, to stop as soon as
+     * possible. A search stopped during its first iteration still completes
+     * that iteration. The request also stops a search begun after it, until
+     * clearStop is called.
+     */
+    public void stop() {
+        stopRequested = true;
+
+        for (Search helper : helpers) {
+            helper.stop();
+        }
+    }
+
+    /**
+     * Gets the depth of the deepest iteration completed by the last search.
+     * @return the depth reached by the last search
+     */
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * Gets the number of nodes expanded by the last search on the calling
+     * thread, not counting any helper threads.
+     * @return the number of nodes expanded
+     */
+    public long getNodeCount() {
+        return count;
+    }
+
+    /**
+     * Gets the counts kept by the last search, including those of any helper
+     * threads. Should be called once the search has returned.
+     * @return a copy of the counts
+     */
+    public SearchStats getStats() {
+        return new SearchStats(stats);
+    }
+
+    /**
+     * Withdraws any request to stop. A request to stop is kept until this is
+     * called, so that one made before the search it is meant for has begun
+     * still stops that search. Should be called on the thread asking for the
+     * search before the search is handed to another thread.
+     */
+    public void clearStop() {
+        stopRequested = false;
+
+        for (Search helper : helpers) {
+            helper.clearStop();
+        }
+    }
+
+    /**
+     * Removes any time or node limit. Any request to stop is kept.
+     */
+    private void resetBudget() {
+        deadline = Long.MAX_VALUE;
+        nodeBudget = Long.MAX_VALUE;
+        abortable = false;
+        aborted = false;
+    }
+
+    /**
+     * Gets whether the current search has used up its budget.
+     * @return whether the search should be abandoned
+     */
+    private boolean outOfBudget() {
+        return stopRequested
+            || count >= nodeBudget
+            || (deadline != Long.MAX_VALUE && System.nanoTime() >= deadline);
+    }
+
+    /**
+     * Gets whether the current search has been asked to stop or has passed
+     * its deadline. Unlike outOfBudget, this may be called from any thread.
+     * @return whether the search should be abandoned
+     */
+    private boolean outOfTime() {
+        return stopRequested
+            || (deadline != Long.MAX_VALUE && System.nanoTime() >= deadline);
+    }
+
+    /**
+     * Follows the best moves stored in the transposition table from the root
+     * to recover the principal variation of the last completed iteration.
+     * @param board the board state at the root
+     * @param turn the color of the player on-move at the root
+     */
+    private void collectPrincipalVariation(final Board board, byte turn) {
+        pvLength = 0;
+        board.saveState();
+
+        while (pvLength < completedDepth
+                && board.getResult() == Board.UNFINISHED) {
+            int sym = board.getCanonicalSymmetry(turn);
+
+            long data = table.probe(board.getSymmetricHash(sym, turn));
+            if (data == 0) {
+                break;
+            }
+
+            int move = Move.transform(TranspositionTable.move(data), Board.inverseSymmetry(sym));
+            if (move == Move.NONE || board.getCell(Move.cell(move)) != Board.EMPTY) {
+                break;
+            }
+
+            principalVariation[pvLength++] = move;
+            Move.play(board, turn, move);
+            turn = Board.oppositeColor(turn);
+        }
+
+        board.restoreState();
+    }
+
+    /**
+     * Evaluates a given board state at a given depth using minimax or alpha-beta search.
+     * @param board the board state to evaluate
+     * @param turn the color of the player on-move
+     * @param depth the depth at which to evaluate the board
+     * @param alpha the alpha parameter for alpha-beta search
+     * @param beta the beta parameter for alpha-beta search
+     * @return an evaluation and move recommendation for the position, or null
+     * if the search was abandoned
+     */
+    public NodeEval evaluateAtDepth(final Board board,
+                                    final byte turn,
+                                    final int depth,
+                                    final NodeEval alpha,
+                                    final NodeEval beta) {
+        int score = searchRoot(board, turn, depth, toScore(alpha, depth), toScore(beta, depth));
+
+        if (aborted) {
+            return null;
+        }
+
+        return toNodeEval(score, depth);
+    }
+
+    /**
+     * Searches the root of the game tree, recording the best move found.
+     * @param board the board state to evaluate
+     * @param turn the color of the player on-move
+     * @param depth the depth at which to evaluate the board
+     * @param alpha the alpha parameter for alpha-beta search
+     * @param beta the beta parameter for alpha-beta search
+     * @return the score of the root
+     */
+    private int searchRoot(final Board board,
+                           final byte turn,
+                           final int depth,
+                           final int alpha,
+                           final int beta) {
+        rootDepth = depth;
+        rootMove = Move.NONE;
+
+        return search(board, turn, depth, 0, alpha, beta);
+    }
+
+    /**
+     * Converts a score of the root into a NodeEval along with the best move
+     * found. A win becomes an infinite evaluation with the depth remaining
+     * when it happens, which is negative for a win beyond the depth limit,
+     * and a tie becomes Board.TIE_EVAL.
+     * @param score the score of the root
+     * @param depth the depth at which the root was searched
+     * @return the equivalent evaluation and move recommendation
+     */
+    private NodeEval toNodeEval(final int score, final int depth) {
+        NodeEval eval = new NodeEval(score / scoreScale, 0, null, 0, 0);
+        if (score == DRAW_SCORE) {
+            eval.eval = Board.TIE_EVAL;
+        } else if (Math.abs(score) >= MIN_MATE_SCORE) {
+            eval.eval = (score > 0) ? Board.MAX_EVAL : Board.MIN_EVAL;
+            eval.terminalDepth = depth - (MATE_SCORE - Math.abs(score));
+        }
+        Move.toNodeEval(rootMove, eval);
+
+        return eval;
+    }
+
+    /**
+     * Converts a NodeEval into the score used within the search.
+     * @param eval the evaluation to convert
+     * @param depth the depth at which the root is searched
+     * @return the equivalent score
+     */
+    private int toScore(final NodeEval eval, final int depth) {
+        if (Double.isNaN(eval.eval)) {
+            return DRAW_SCORE;
+        }
+
+        if (Double.isInfinite(eval.eval)) {
+            int score = (eval.terminalDepth == Integer.MAX_VALUE)
+                      ? INFINITE_SCORE
+                      : MATE_SCORE - (depth - eval.terminalDepth);
+
+            return (eval.eval > 0) ? score : -score;
+        }
+
+        long score = Math.round(eval.eval * scoreScale);
+
+        return (int) Math.max(-MAX_EVAL_SCORE, Math.min(score, MAX_EVAL_SCORE));
+    }
+
+    /**
+     * Searches a node of the game tree. Scores favor white when positive,
+     * as with Board.evaluation, but in fixed point, except that a win is
+     * scored as MATE_SCORE less the plies from the root at which it
+     * happens, and a tie as DRAW_SCORE. Nodes at the
+     * depth limit are passed to the quiescence search, if there is one.
+     * @param board the board state to evaluate
+     * @param turn the color of the player on-move
+     * @param depth the depth remaining at this node
+     * @param ply the distance of this node from the root
+     * @param alpha the alpha parameter for alpha-beta search
+     * @param beta the beta parameter for alpha-beta search
+     * @return the score of the node
+     */
+    private int search(final Board board,
+                       final byte turn,
+                       final int depth,
+                       final int ply,
+                       int alpha,
+                       int beta) {
+        if (depth == 0 && quiescencePlies > 0) {
+            return quiesce(board, turn, 0, ply, alpha, beta);
+        }
+
+        count++;
+        stats.plyNodes[ply]++;
+
+        if (abortable
+                && (aborted || ((count & BUDGET_CHECK_MASK) == 0 && outOfBudget()))) {
+            aborted = true;
+
+            return 0;
+        }
+
+        byte result = board.getResult();
+
+        if (result != Board.UNFINISHED) {
+            stats.leafNodes++;
+            return terminalScore(result, ply);
+        }
+        if (depth == 0) {
+            stats.leafNodes++;
+            return offDraw(board.evaluation(lineScores), turn);
+        }
+
+        int sym = board.getCanonicalSymmetry(turn);
+        long key = board.getSymmetricHash(sym, turn);
+        int hashMove = Move.NONE;
+
+        long data = 0;
+        if (USE_TRANSPOSITION_TABLE) {
+            stats.tableProbes++;
+            data = table.probe(key);
+        }
+
+        if (data != 0) {
+            stats.tableHits++;
+            hashMove = Move.transform(TranspositionTable.move(data), Board.inverseSymmetry(sym));
+
+            if (ply > 0 && TranspositionTable.depth(data) >= depth) {
+                int stored = fromTable(TranspositionTable.score(data), ply);
+                int bound = TranspositionTable.bound(data);
+
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER_BOUND && stored >= beta)
+                        || (bound == TranspositionTable.UPPER_BOUND && stored <= alpha)) {
+                    stats.tableCutoffs++;
+                    return stored;
+                }
+            }
+        }
+
+        boolean onPv = followPv && ply < pvLength;
+        if (onPv) {
+            hashMove = principalVariation[ply];
+        }
+        if (hashMove != Move.NONE && Move.quad(hashMove) == Move.NO_ROTATION) {
+            hashMove = Move.ofRotation(Move.cell(hashMove), 0);
+        }
+
+        int alphaOrig = alpha;
+        int betaOrig = beta;
+        boolean white = turn == Board.WHITE;
+        byte newColor = Board.oppositeColor(turn);
+
+        int best = 0;
+        int bestMove = Move.NONE;
+        int searched = 0;
+
+        stats.interiorNodes++;
+
+        boolean quiet = (lateMoveReductions > 0 || futilityMargin > 0)
+                && board.getThreatCells(turn) == 0
+                && board.getThreatCells(newColor) == 0;
+        boolean futile = false;
+        boolean pruned = false;
+        int futileScore = 0;
+        if (futilityMargin > 0 && USE_ALPHA_BETA && quiet && ply > 0
+                && depth <= FUTILITY_MAX_DEPTH) {
+            int margin = (int) Math.round(futilityMargin * scoreScale * depth);
+            futileScore = offDraw(board.evaluation(lineScores) + (white ? margin : -margin), turn);
+            futile = white ? futileScore <= alpha : futileScore >= beta;
+        }
+
+        int[] moves = moveLists[ply];
+        int[] scores = moveScores[ply];
+        int numMoves = generateMoves(board, turn, ply, hashMove);
+
+        KeySet seen = childKeys[ply];
+        seen.clear();
+
+        for (int i = 0; i < numMoves; i++) {
+            int move = selectMove(moves, scores, i, numMoves);
+            int cell = Move.cell(move);
+
+            board.saveState();
+            board.setCell(cell, turn);
+
+            if (board.getResult() == turn) {
+                board.restoreState();
+
+                best = terminalScore(turn, ply + 1);
+                bestMove = Move.of(cell, Move.NO_ROTATION, false);
+                if (ply == 0) {
+                    rootMove = bestMove;
+                }
+                storeScore(key, sym, depth, ply, best, alphaOrig, betaOrig, bestMove);
+
+                return best;
+            }
+
+            if (futile && searched > 0) {
+                board.restoreState();
+                stats.futilityPrunes++;
+                pruned = true;
+
+                if (white ? futileScore > best : futileScore < best) {
+                    best = futileScore;
+                }
+                continue;
+            }
+
+            board.rotateQuadrant(Move.quad(move), Move.direction(move));
+
+            if (SKIP_DUPLICATE_CHILDREN && !seen.add(board.getCanonicalHash(newColor))) {
+                board.restoreState();
+                continue;
+            }
+
+            followPv = onPv && move == hashMove;
+            searched++;
+
+            int reduction = 0;
+            if (USE_PVS && USE_ALPHA_BETA
+                    && lateMoveReductions > 0 && quiet && depth >= REDUCTION_MIN_DEPTH
+                    && searched > lateMoveReductions
+                    && scores[i] < KILLER_SCORE - (NUM_KILLERS - 1)) {
+                reduction = 1;
+                stats.reductions++;
+            }
+
+            int score;
+            if (USE_PVS && USE_ALPHA_BETA && searched > 1) {
+                score = search(board,
+                               newColor,
+                               depth - 1 - reduction,
+                               ply + 1,
+                               white ? alpha : beta - 1,
+                               white ? alpha + 1 : beta);
+
+                if (!aborted && reduction > 0 && reductionResearch
+                        && (white ? score > alpha : score < beta)) {
+                    stats.reductionResearches++;
+                    score = search(board,
+                                   newColor,
+                                   depth - 1,
+                                   ply + 1,
+                                   white ? alpha : beta - 1,
+                                   white ? alpha + 1 : beta);
+                }
+
+                if (!aborted && score > alpha && score < beta) {
+                    stats.nullWindowResearches++;
+                    followPv = false;
+                    score = search(board, newColor, depth - 1, ply + 1, alpha, beta);
+                }
+            } else {
+                score = search(board, newColor, depth - 1, ply + 1, alpha, beta);
+            }
+            board.restoreState();
+
+            if (aborted) {
+                return 0;
+            }
+
+            if (bestMove == Move.NONE || (white ? score > best : score < best)) {
+                best = score;
+                bestMove = move;
+                if (ply == 0) {
+                    rootMove = move;
+                }
+
+                if (USE_ALPHA_BETA) {
+                    if (white) {
+                        alpha = Math.max(alpha, score);
+                    } else {
+                        beta = Math.min(beta, score);
+                    }
+                }
+            }
+
+            if (USE_ALPHA_BETA && alpha >= beta) {
+                stats.cutoffs++;
+                if (searched == 1) {
+                    stats.firstMoveCutoffs++;
+                }
+
+                recordCutoff(move, depth, ply);
+                storeScore(key, sym, depth, ply, best, alphaOrig, betaOrig, bestMove);
+
+                return best;
+            }
+        }
+
+        if (pruned) {
+            // The pruned children were only estimated, each no better for
+            // the player on-move than futileScore, so the score is a bound
+            // in their favor rather than exact.
+            storeBound(key, sym, depth, ply, best,
+                       white ? TranspositionTable.UPPER_BOUND : TranspositionTable.LOWER_BOUND,
+                       bestMove);
+        } else {
+            storeScore(key, sym, depth, ply, best, alphaOrig, betaOrig, bestMove);
+        }
+
+        return best;
+    }
+
+    /**
+     * Searches a node at or beyond the depth limit, trying only forcing
+     * moves. A player able to complete a five-in-a-row wins; otherwise, if
+     * the other player threatens to complete one, the player on-move tries
+     * placing on each threatened cell with each rotation; otherwise the
+     * node is quiet and is evaluated statically. Since a threat may also be
+     * met by a placement elsewhere, such as one whose rotation moves the
+     * threatening line apart, a node whose tried moves all lose is only
+     * evaluated statically rather than scored as lost. Threats are found
+     * with bitboards, so a quiet node costs little more than its
+     * evaluation. Nodes are not stored in the transposition table.
+     * @param board the board state to evaluate
+     * @param turn the color of the player on-move
+     * @param depth the depth remaining at this node, 0 or less
+     * @param ply the distance of this node from the root
+     * @param alpha the alpha parameter for alpha-beta search
+     * @param beta the beta parameter for alpha-beta search
+     * @return the score of the node
+     */
+    private int quiesce(final Board board,
+                        final byte turn,
+                        final int depth,
+                        final int ply,
+                        int alpha,
+                        int beta) {
+        count++;
+        stats.plyNodes[ply]++;
+
+        if (abortable
+                && (aborted || ((count & BUDGET_CHECK_MASK) == 0 && outOfBudget()))) {
+            aborted = true;
+
+            return 0;
+        }
+
+        byte result = board.getResult();
+
+        if (result != Board.UNFINISHED) {
+            stats.leafNodes++;
+            return terminalScore(result, ply);
+        }
+        if (board.getWinningCells(turn) != 0) {
+            stats.leafNodes++;
+            return terminalScore(turn, ply + 1);
+        }
+
+        byte newColor = Board.oppositeColor(turn);
+        long wins = 0;
+        long blocks = 0;
+        if (depth > -quiescencePlies) {
+            wins = board.getThreatCells(turn);
+            blocks = board.getThreatCells(newColor);
+        }
+
+        for (long cells = wins; cells != 0; cells &= cells - 1) {
+            int cell = Long.numberOfTrailingZeros(cells);
+
+            for (int rotation = 0; rotation < Move.NUM_ROTATIONS; rotation++) {
+                int move = Move.ofRotation(cell, rotation);
+
+                board.saveState();
+                board.setCell(cell, turn);
+                board.rotateQuadrant(Move.quad(move), Move.direction(move));
+                boolean won = board.getResult() == turn;
+                board.restoreState();
+
+                if (won) {
+                    stats.leafNodes++;
+                    return terminalScore(turn, ply + 1);
+                }
+            }
+        }
+
+        if (blocks == 0) {
+            stats.leafNodes++;
+            return offDraw(board.evaluation(lineScores), turn);
+        }
+
+        stats.quiescenceNodes++;
+
+        boolean white = turn == Board.WHITE;
+        int best = 0;
+        boolean searched = false;
+
+        boolean cutoff = false;
+
+        KeySet seen = childKeys[ply];
+        seen.clear();
+
+        for (long cells = blocks; cells != 0 && !cutoff; cells &= cells - 1) {
+            int cell = Long.numberOfTrailingZeros(cells);
+
+            for (int rotation = 0; rotation < Move.NUM_ROTATIONS && !cutoff; rotation++) {
+                int move = Move.ofRotation(cell, rotation);
+
+                board.saveState();
+                board.setCell(cell, turn);
+                board.rotateQuadrant(Move.quad(move), Move.direction(move));
+
+                if (SKIP_DUPLICATE_CHILDREN && !seen.add(board.getCanonicalHash(newColor))) {
+                    board.restoreState();
+                    continue;
+                }
+
+                int score = quiesce(board, newColor, depth - 1, ply + 1, alpha, beta);
+                board.restoreState();
+
+                if (aborted) {
+                    return 0;
+                }
+
+                if (!searched || (white ? score > best : score < best)) {
+                    best = score;
+                    searched = true;
+
+                    if (USE_ALPHA_BETA) {
+                        if (white) {
+                            alpha = Math.max(alpha, score);
+                        } else {
+                            beta = Math.min(beta, score);
+                        }
+                    }
+                }
+
+                cutoff = USE_ALPHA_BETA && alpha >= beta;
+            }
+        }
+
+        if (white ? best <= -MIN_MATE_SCORE : best >= MIN_MATE_SCORE) {
+            return offDraw(board.evaluation(lineScores), turn);
+        }
+
+        return best;
+    }
+
+    /**
+     * Converts the outcome of a finished game into a search score.
+     * @param result the outcome, one of Board.WHITE, Board.BLACK and Board.TIE
+     * @param ply the distance from the root at which the game finished
+     * @return the search score of the finished game
+     */
+    private static int terminalScore(final byte result, final int ply) {
+        if (result == Board.TIE) {
+            return DRAW_SCORE;
+        }
+
+        return (result == Board.WHITE) ? MATE_SCORE - ply : -(MATE_SCORE - ply);
+    }
+
+    /**
+     * Keeps a heuristic score off DRAW_SCORE, so that only a tie is ever
+     * scored as one. A heuristic score equal to it is moved one unit in
+     * favor of the player on-move.
+     * @param score the heuristic score
+     * @param turn the color of the player on-move
+     * @return the score, unless it equals DRAW_SCORE
+     */
+    private static int offDraw(final int score, final byte turn) {
+        if (score != DRAW_SCORE) {
+            return score;
+        }
+
+        return (turn == Board.WHITE) ? DRAW_SCORE + 1 : DRAW_SCORE - 1;
+    }
+
+    /**
+     * Stores the score of a searched node in the transposition table.
+     * @param key the canonical hash of the position
+     * @param sym the symmetry that moves the position to its canonical form
+     * @param depth the depth at which the position was searched
+     * @param ply the distance of the position from the root
+     * @param score the score found for the position
+     * @param alpha the alpha parameter with which the position was searched
+     * @param beta the beta parameter with which the position was searched
+     * @param move the best move found for the position
+     */
+    private void storeScore(final long key,
+                            final int sym,
+                            final int depth,
+                            final int ply,
+                            final int score,
+                            final int alpha,
+                            final int beta,
+                            final int move) {
+        int bound = TranspositionTable.EXACT;
+        if (score >= beta) {
+            bound = TranspositionTable.LOWER_BOUND;
+        } else if (score <= alpha) {
+            bound = TranspositionTable.UPPER_BOUND;
+        }
+
+        storeBound(key, sym, depth, ply, score, bound, move);
+    }
+
+    /**
+     * Stores the score of a searched node in the transposition table with
+     * a given bound.
+     * @param key the canonical hash of the position
+     * @param sym the symmetry that moves the position to its canonical form
+     * @param depth the depth at which the position was searched
+     * @param ply the distance of the position from the root
+     * @param score the score found for the position
+     * @param bound the kind of bound the score is, as in TranspositionTable
+     * @param move the best move found for the position
+     */
+    private void storeBound(final long key,
+                            final int sym,
+                            final int depth,
+                            final int ply,
+                            final int score,
+                            final int bound,
+                            final int move) {
+        if (!USE_TRANSPOSITION_TABLE) {
+            return;
+        }
+
+        table.store(key, depth, bound, toTable(score, ply), Move.transform(move, sym));
+    }
+
+    /**
+     * Converts a score relative to the root into one relative to the node,
+     * for storing in the transposition table. Only wins depend on the
+     * distance from the root.
+     * @param score the score relative to the root
+     * @param ply the distance of the node from the root
+     * @return the score as though the node were the root
+     */
+    private static int toTable(final int score, final int ply) {
+        if (score >= MIN_MATE_SCORE) {
+            return score + ply;
+        } else if (score <= -MIN_MATE_SCORE) {
+            return score - ply;
+        }
+
+        return score;
+    }
+
+    /**
+     * Converts a score stored in the transposition table into one relative
+     * to the root.
+     * @param score the score as though the node were the root
+     * @param ply the distance of the node from the root
+     * @return the score relative to the root
+     */
+    private static int fromTable(final int score, final int ply) {
+        if (score >= MIN_MATE_SCORE) {
+            return score - ply;
+        } else if (score <= -MIN_MATE_SCORE) {
+            return score + ply;
+        }
+
+        return score;
+    }
+
+    /**
+     * Lists the moves available to the player on-move along with their
+     * ordering scores. The hash move scores highest, then the killer moves,
+     * then the rest by their history scores. Near the root, where a bad
+     * ordering is most costly, placements are first ranked by their static
+     * evaluations, and the rotations of each placement by theirs.
+     * @param board the board state from which the moves are to be made
+     * @param turn the color of the player on-move
+     * @param ply the distance of the node from the root
+     * @param hashMove the packed move to try first, or Move.NONE
+     * @return the number of moves listed in moveLists[ply]
+     */
+    private int generateMoves(final Board board,
+                              final byte turn,
+                              final int ply,
+                              final int hashMove) {
+        int[] moves = moveLists[ply];
+        int[] scores = moveScores[ply];
+        int[] plyKillers = killers[ply];
+        boolean ranked = ply < EVAL_ORDERING_PLIES;
+        int numMoves = 0;
+
+        if (ranked) {
+            rankPlacements(board, turn);
+        }
+
+        for (int cell = 0; cell < Board.BOARD_SIZE; cell++) {
+            if (board.getCell(cell) != Board.EMPTY) {
+                continue;
+            }
+
+            int base = 0;
+            if (ranked) {
+                rankRotations(board, turn, cell);
+                base = cellRanks[cell] << CELL_RANK_SHIFT;
+            }
+
+            for (int rotation = 0; rotation < Move.NUM_ROTATIONS; rotation++) {
+                int move = Move.ofRotation(cell, rotation);
+                int score = base + history[cell][rotation];
+                if (ranked) {
+                    score += rotationRanks[rotation] << ROTATION_RANK_SHIFT;
+                }
+
+                if (move == hashMove) {
+                    score = HASH_MOVE_SCORE;
+                } else {
+                    for (int k = 0; k < NUM_KILLERS; k++) {
+                        if (move == plyKillers[k]) {
+                            score = KILLER_SCORE - k;
+                            break;
+                        }
+                    }
+                }
+
+                moves[numMoves] = move;
+                scores[numMoves] = score;
+                numMoves++;
+            }
+        }
+
+        return numMoves;
+    }
+
+    /**
+     * Ranks the empty cells by the static evaluation of placing the player
+     * on-move's stone there, filling cellRanks. The placements are all
+     * evaluated in one pass, and a placement that wins outright ranks first
+     * while one that fills the board without winning ranks last.
+     * @param board the board state from which the moves are to be made
+     * @param turn the color of the player on-move
+     */
+    private void rankPlacements(final Board board, final byte turn) {
+        int numCells = 0;
+        long wins = board.getWinningCells(turn);
+        boolean filling = board.getEmptyCount() == 1;
+
+        board.placementEvaluations(turn, lineScores, placementScores);
+
+        for (int cell = 0; cell < Board.BOARD_SIZE; cell++) {
+            if (board.getCell(cell) == Board.EMPTY) {
+                int score;
+                if ((wins & (1L << cell)) != 0) {
+                    score = Integer.MIN_VALUE;
+                } else if (filling) {
+                    score = Integer.MAX_VALUE;
+                } else {
+                    score = (turn == Board.WHITE) ? -placementScores[cell] : placementScores[cell];
+                }
+
+                int i = numCells++;
+                while (i > 0 && rankedScores[i - 1] > score) {
+                    rankedCells[i] = rankedCells[i - 1];
+                    rankedScores[i] = rankedScores[i - 1];
+                    i--;
+                }
+                rankedCells[i] = cell;
+                rankedScores[i] = score;
+            }
+        }
+
+        for (int i = 0; i < numCells; i++) {
+            cellRanks[rankedCells[i]] = numCells - i;
+        }
+    }
+
+    /**
+     * Ranks the moves placing the player on-move's stone on a cell by the
+     * static evaluation after each, filling rotationRanks. The rotations
+     * are all evaluated in one pass, and equal evaluations share a rank.
+     * @param board the board state from which the moves are to be made
+     * @param turn the color of the player on-move
+     * @param cell the empty cell on which the stone is placed
+     */
+    private void rankRotations(final Board board, final byte turn, final int cell) {
+        board.rotationEvaluations(turn, cell, lineScores, rotationScores);
+
+        for (int i = 0; i < Move.NUM_ROTATIONS; i++) {
+            int rank = 0;
+            for (int j = 0; j < Move.NUM_ROTATIONS; j++) {
+                boolean worse = (turn == Board.WHITE)
+                        ? rotationScores[j] < rotationScores[i]
+                        : rotationScores[j] > rotationScores[i];
+                if (worse) {
+                    rank++;
+                }
+            }
+            rotationRanks[i] = rank;
+        }
+    }
+
+    /**
+     * Moves the highest-scoring of the moves not yet tried into place. Only
+     * as much of the list is sorted as the search actually uses, since most
+     * nodes are cut off after a few moves.
+     * @param moves the moves of the node
+     * @param scores the ordering scores of the moves
+     * @param index the number of moves already tried
+     * @param numMoves the number of moves of the node
+     * @return the next move to try
+     */
+    private static int selectMove(final int[] moves,
+                                  final int[] scores,
+                                  final int index,
+                                  final int numMoves) {
+        int bestIndex = index;
+
+        for (int i = index + 1; i < numMoves; i++) {
+            if (scores[i] > scores[bestIndex]) {
+                bestIndex = i;
+            }
+        }
+
+        int move = moves[bestIndex];
+        int score = scores[bestIndex];
+        moves[bestIndex] = moves[index];
+        scores[bestIndex] = scores[index];
+        moves[index] = move;
+        scores[index] = score;
+
+        return move;
+    }
+
+    /**
+     * Remembers a move that caused a beta cutoff as a killer move for its
+     * ply and credits it in the history table.
+     * @param move the packed move
+     * @param depth the depth remaining at the node it was played from
+     * @param ply the distance of the node from the root
+     */
+    private void recordCutoff(final int move, final int depth, final int ply) {
+        int[] plyKillers = killers[ply];
+
+        if (plyKillers[0] != move) {
+            plyKillers[1] = plyKillers[0];
+            plyKillers[0] = move;
+        }
+
+        int[] cellHistory = history[Move.cell(move)];
+        int rotation = Move.rotation(move);
+        cellHistory[rotation] += depth * depth;
+
+        if (cellHistory[rotation] > HISTORY_LIMIT) {
+            ageHistory();
+        }
+    }
+
+    /**
+     * Halves every history score.
+     */
+    private void ageHistory() {
+        for (int[] cellHistory : history) {
+            for (int i = 0; i < cellHistory.length; i++) {
+                cellHistory[i] /= 2;
+            }
+        }
+    }
+
+    /**
+     * Prepares the move ordering for a new search: killer moves are
+     * forgotten, since they belong to the plies of the old root, and history
+     * scores are aged.
+     */
+    private void startOrdering() {
+        for (int[] plyKillers : killers) {
+            Arrays.fill(plyKillers, Move.NONE);
         }
 
-        return out;
+        ageHistory();
     }
-}
\ No newline at end of file
+}
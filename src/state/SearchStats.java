@@ -0,0 +1,391 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Counts kept by a Search while it runs, used to judge how well the search
+ * orders its moves and how much work it does per move.
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+public class SearchStats {
+    /**
+     * The greatest distance from the root at which nodes are counted, since
+     * every move fills a cell.
+     */
+    private static final int MAX_PLY = Board.BOARD_SIZE + 1;
+    /**
+     * The number of nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * The number of nodes visited at each distance from the root.
+     */
+    final long[] plyNodes;
+    /**
+     * The number of nodes visited by each completed iteration, indexed by
+     * the iteration's depth.
+     */
+    final long[] iterationNodes;
+    /**
+     * The number of nodes visited by the endgame solver, on all its threads.
+     */
+    long solverNodes;
+    /**
+     * The number of nodes scored without searching any of their children.
+     */
+    long leafNodes;
+    /**
+     * The number of nodes whose children were searched.
+     */
+    long interiorNodes;
+    /**
+     * The number of nodes beyond the depth limit at which forcing moves
+     * were searched.
+     */
+    long quiescenceNodes;
+    /**
+     * The number of nodes whose search stopped early on a beta cutoff.
+     */
+    long cutoffs;
+    /**
+     * The number of beta cutoffs caused by the first child searched.
+     */
+    long firstMoveCutoffs;
+    /**
+     * The number of positions looked up in the transposition table.
+     */
+    long tableProbes;
+    /**
+     * The number of lookups that found an entry.
+     */
+    long tableHits;
+    /**
+     * The number of lookups whose entry settled the node without a search.
+     */
+    long tableCutoffs;
+    /**
+     * The number of children searched again with a full window after failing
+     * high on a null window.
+     */
+    long nullWindowResearches;
+    /**
+     * The number of children searched a ply shallower by late move
+     * reductions.
+     */
+    long reductions;
+    /**
+     * The number of reduced children searched again at full depth after
+     * failing high.
+     */
+    long reductionResearches;
+    /**
+     * The number of children pruned as futile near the depth limit.
+     */
+    long futilityPrunes;
+    /**
+     * The number of times the root was searched again after its score fell
+     * outside the aspiration window.
+     */
+    long aspirationResearches;
+    /**
+     * The depth of the deepest completed iteration.
+     */
+    int completedDepth;
+    /**
+     * The number of nanoseconds the search ran for.
+     */
+    long elapsedNanos;
+
+    /**
+     * Constructs an empty set of counts.
+     */
+    public SearchStats() {
+        plyNodes = new long[MAX_PLY];
+        iterationNodes = new long[MAX_PLY + 1];
+    }
+
+    /**
+     * Constructs a copy of another set of counts.
+     * @param other the counts to copy
+     */
+    public SearchStats(final SearchStats other) {
+        this();
+        add(other);
+        System.arraycopy(other.iterationNodes, 0, iterationNodes, 0, iterationNodes.length);
+        completedDepth = other.completedDepth;
+        elapsedNanos = other.elapsedNanos;
+    }
+
+    /**
+     * Resets every count to zero.
+     */
+    void clear() {
+        Arrays.fill(plyNodes, 0);
+        Arrays.fill(iterationNodes, 0);
+        solverNodes = 0;
+        leafNodes = 0;
+        interiorNodes = 0;
+        quiescenceNodes = 0;
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+        tableProbes = 0;
+        tableHits = 0;
+        tableCutoffs = 0;
+        nullWindowResearches = 0;
+        reductions = 0;
+        reductionResearches = 0;
+        futilityPrunes = 0;
+        aspirationResearches = 0;
+        completedDepth = 0;
+        elapsedNanos = 0;
+    }
+
+    /**
+     * Adds the node counts of another search, such as a helper thread's,
+     * to these counts. The per-iteration counts, the depth and the elapsed
+     * time are left unchanged, since helpers run their own iterations.
+     * @param other the counts to add
+     */
+    void add(final SearchStats other) {
+        for (int i = 0; i < plyNodes.length; i++) {
+            plyNodes[i] += other.plyNodes[i];
+        }
+        solverNodes += other.solverNodes;
+        leafNodes += other.leafNodes;
+        interiorNodes += other.interiorNodes;
+        quiescenceNodes += other.quiescenceNodes;
+        cutoffs += other.cutoffs;
+        firstMoveCutoffs += other.firstMoveCutoffs;
+        tableProbes += other.tableProbes;
+        tableHits += other.tableHits;
+        tableCutoffs += other.tableCutoffs;
+        nullWindowResearches += other.nullWindowResearches;
+        reductions += other.reductions;
+        reductionResearches += other.reductionResearches;
+        futilityPrunes += other.futilityPrunes;
+        aspirationResearches += other.aspirationResearches;
+    }
+
+    /**
+     * Gets the total number of nodes visited, including the endgame
+     * solver's.
+     * @return the number of nodes
+     */
+    public long getNodes() {
+        long nodes = solverNodes;
+
+        for (long n : plyNodes) {
+            nodes += n;
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Gets the number of nodes visited at a given distance from the root,
+     * over every iteration.
+     * @param ply the distance from the root
+     * @return the number of nodes
+     */
+    public long getNodesAtPly(final int ply) {
+        return (ply >= 0 && ply < plyNodes.length) ? plyNodes[ply] : 0;
+    }
+
+    /**
+     * Gets the number of nodes visited by the iteration of a given depth.
+     * @param depth the depth of the iteration
+     * @return the number of nodes, or 0 if the iteration did not complete
+     */
+    public long getIterationNodes(final int depth) {
+        return (depth >= 0 && depth < iterationNodes.length) ? iterationNodes[depth] : 0;
+    }
+
+    /**
+     * Gets the number of nodes scored without searching any children, being
+     * nodes at the search horizon and finished games.
+     * @return the number of leaf nodes
+     */
+    public long getLeafNodes() {
+        return leafNodes;
+    }
+
+    /**
+     * Gets the number of nodes whose children were searched.
+     * @return the number of interior nodes
+     */
+    public long getInteriorNodes() {
+        return interiorNodes;
+    }
+
+    /**
+     * Gets the number of nodes beyond the depth limit at which forcing moves
+     * were searched.
+     * @return the number of quiescence nodes
+     */
+    public long getQuiescenceNodes() {
+        return quiescenceNodes;
+    }
+
+    /**
+     * Gets the number of nodes whose search stopped early on a beta cutoff.
+     * @return the number of cutoffs
+     */
+    public long getCutoffs() {
+        return cutoffs;
+    }
+
+    /**
+     * Gets the fraction of beta cutoffs caused by the first child searched,
+     * which is higher the better the moves are ordered.
+     * @return the first-move cutoff rate, between 0 and 1
+     */
+    public double getFirstMoveCutoffRate() {
+        return (cutoffs == 0) ? 0 : (double) firstMoveCutoffs / cutoffs;
+    }
+
+    /**
+     * Gets the number of positions looked up in the transposition table.
+     * @return the number of lookups
+     */
+    public long getTableProbes() {
+        return tableProbes;
+    }
+
+    /**
+     * Gets the number of transposition table lookups that found an entry.
+     * @return the number of hits
+     */
+    public long getTableHits() {
+        return tableHits;
+    }
+
+    /**
+     * Gets the number of transposition table entries that settled a node
+     * without a search.
+     * @return the number of cutoffs from the table
+     */
+    public long getTableCutoffs() {
+        return tableCutoffs;
+    }
+
+    /**
+     * Gets the number of children searched again with a full window after
+     * failing high on a null window.
+     * @return the number of null-window re-searches
+     */
+    public long getNullWindowResearches() {
+        return nullWindowResearches;
+    }
+
+    /**
+     * Gets the number of children searched a ply shallower by late move
+     * reductions.
+     * @return the number of reductions
+     */
+    public long getReductions() {
+        return reductions;
+    }
+
+    /**
+     * Gets the number of reduced children searched again at full depth after
+     * failing high.
+     * @return the number of reduction re-searches
+     */
+    public long getReductionResearches() {
+        return reductionResearches;
+    }
+
+    /**
+     * Gets the number of children pruned as futile near the depth limit.
+     * @return the number of futility prunes
+     */
+    public long getFutilityPrunes() {
+        return futilityPrunes;
+    }
+
+    /**
+     * Gets the number of times the root was searched again after its score
+     * fell outside the aspiration window.
+     * @return the number of aspiration re-searches
+     */
+    public long getAspirationResearches() {
+        return aspirationResearches;
+    }
+
+    /**
+     * Gets the depth of the deepest completed iteration.
+     * @return the completed depth
+     */
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * Gets the number of nanoseconds the search ran for.
+     * @return the elapsed time
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Gets the number of nodes visited per second.
+     * @return the nodes per second, or 0 if no time was recorded
+     */
+    public double getNodesPerSecond() {
+        return (elapsedNanos == 0) ? 0 : getNodes() * NANOS_PER_SECOND / elapsedNanos;
+    }
+
+    /**
+     * Gets the effective branching factor of the search: the branching factor
+     * of a uniform tree of the completed depth holding as many nodes as the
+     * deepest completed iteration visited.
+     * @return the effective branching factor, or 0 if no iteration completed
+     */
+    public double getEffectiveBranchingFactor() {
+        if (completedDepth <= 0) {
+            return 0;
+        }
+
+        return Math.pow(iterationNodes[completedDepth], 1.0 / completedDepth);
+    }
+
+    /**
+     * Summarizes the counts on a single line.
+     * @return the summary
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "depth %d, %d nodes (%d leaf, %d interior, %d quiescence), %.0f nps, ebf %.2f,"
+                + " %d cutoffs (%.1f%% first move), tt %d/%d hits (%d cutoffs),"
+                + " %d pvs / %d aspiration re-searches, %d reduced (%d re-searched),"
+                + " %d futile",
+                completedDepth,
+                getNodes(),
+                leafNodes,
+                interiorNodes,
+                quiescenceNodes,
+                getNodesPerSecond(),
+                getEffectiveBranchingFactor(),
+                cutoffs,
+                100 * getFirstMoveCutoffRate(),
+                tableHits,
+                tableProbes,
+                tableCutoffs,
+                nullWindowResearches,
+                aspirationResearches,
+                reductions,
+                reductionResearches,
+                futilityPrunes);
+    }
+}
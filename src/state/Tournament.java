@@ -0,0 +1,664 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The entry-point class for headless AI-vs-AI tournaments between two engine
+ * configurations. Games are played concurrently, each thread keeping its
+ * own pair of searches. Every opening is played twice, once with each engine
+ * moving first, and the result is reported from engine A's point of view
+ * with a 95% confidence interval, along with each engine's time per move.
+ * <p>
+ * Usage: java state.Tournament games engineA engineB [openingPlies [threads
+ * [openingBook]]]
+ * <p>
+ * An engine is given as a comma-separated list of settings, any of which may
+ * be left out: depth=N (deepest iteration), time=MS (time per move, 0 for
+ * none), nodes=N (nodes per move, 0 for none), threads=N (search threads
+ * per move), endgame=N (empty cells at which to solve exactly, 0 for never),
+ * quiescence=N (plies of forcing moves past the depth limit, 0 for none),
+ * lmr=N (children searched at full depth before late move reductions, 0 for
+ * none), futility=X (futility margin per ply, 0 for none), research=0|1
+ * (whether reduced children that fail high are searched again),
+ * book=FILE (opening book to play from) and scores=a:b:c:d:e:f/g:h:i:j:k:l
+ * (scoring weights). For example: depth=4,time=0,endgame=0. When an opening
+ * book is given for the openings, each opening move is picked at random
+ * among the moves that stay in the book.
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+public class Tournament {
+    /**
+     * The scoring weights used by an engine that does not give its own.
+     */
+    private static final double[][] SCORES = PentagoMain.DEFAULT_SCORES;
+    /**
+     * The number of milliseconds per move of an engine that does not give
+     * its own budget.
+     */
+    private static final long DEFAULT_TIME_BUDGET = 100;
+    /**
+     * The number of random plies played from the empty board to make each
+     * opening, unless given on the command line.
+     */
+    private static final int DEFAULT_OPENING_PLIES = 4;
+    /**
+     * The number of transposition table entries of each search, smaller than
+     * the default since every thread holds two searches.
+     */
+    private static final int TABLE_ENTRIES = 1 << 18;
+    /**
+     * The number of random openings tried per opening wanted before
+     * duplicate openings are allowed.
+     */
+    private static final int OPENING_ATTEMPTS = 100;
+    /**
+     * The number of games played between progress reports.
+     */
+    private static final int REPORT_INTERVAL = 100;
+    /**
+     * The number of standard deviations on either side of the mean covered
+     * by a 95% confidence interval.
+     */
+    private static final double Z_95 = 1.96;
+    /**
+     * The number of nanoseconds in a millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * The settings of one side of the tournament.
+     */
+    private static class Engine {
+        /**
+         * The settings as given on the command line.
+         */
+        private final String spec;
+        /**
+         * The deepest iteration searched.
+         */
+        private int maxDepth = Board.BOARD_SIZE;
+        /**
+         * The number of milliseconds searched per move, or 0 for no limit.
+         */
+        private long timeBudget = DEFAULT_TIME_BUDGET;
+        /**
+         * The number of nodes searched per move, or 0 for no limit.
+         */
+        private long nodeBudget = 0;
+        /**
+         * The number of threads each search runs on.
+         */
+        private int threads = 1;
+        /**
+         * The number of empty cells at or below which positions are solved.
+         */
+        private int endgameEmptyCells = Search.DEFAULT_ENDGAME_EMPTY_CELLS;
+        /**
+         * The number of plies of forcing moves searched past the depth limit.
+         */
+        private int quiescencePlies = Search.DEFAULT_QUIESCENCE_PLIES;
+        /**
+         * The number of children searched at full depth before reductions.
+         */
+        private int lateMoveReductions = Search.DEFAULT_LATE_MOVE_REDUCTIONS;
+        /**
+         * The futility margin per ply.
+         */
+        private double futilityMargin = Search.DEFAULT_FUTILITY_MARGIN;
+        /**
+         * Whether reduced children that fail high are searched again.
+         */
+        private boolean reductionResearch = true;
+        /**
+         * The opening book played from, or null for none.
+         */
+        private OpeningBook book;
+        /**
+         * The scoring weights.
+         */
+        private double[][] scores = SCORES;
+
+        /**
+         * Constructs an engine from its command-line settings.
+         * @param spec the comma-separated settings
+         * @throws IOException if the engine's opening book cannot be read
+         */
+        Engine(final String spec) throws IOException {
+            this.spec = spec;
+
+            for (String setting : spec.split(",")) {
+                if (setting.isEmpty()) {
+                    continue;
+                }
+
+                int equals = setting.indexOf('=');
+                if (equals < 0) {
+                    throw new IllegalArgumentException("Bad engine setting: " + setting);
+                }
+
+                String key = setting.substring(0, equals);
+                String value = setting.substring(equals + 1);
+
+                switch (key) {
+                    case "depth":
+                        maxDepth = (int) settingValue(key, value, 1, Integer.MAX_VALUE);
+                        break;
+                    case "time":
+                        timeBudget = settingValue(key, value, 0, Long.MAX_VALUE);
+                        break;
+                    case "nodes":
+                        nodeBudget = settingValue(key, value, 0, Long.MAX_VALUE);
+                        break;
+                    case "threads":
+                        threads = (int) settingValue(key, value, 1, Integer.MAX_VALUE);
+                        break;
+                    case "endgame":
+                        endgameEmptyCells = (int) settingValue(key, value, 0, Board.BOARD_SIZE);
+                        break;
+                    case "quiescence":
+                        quiescencePlies = (int) settingValue(key, value, 0, Integer.MAX_VALUE);
+                        break;
+                    case "lmr":
+                        lateMoveReductions = (int) settingValue(key, value, 0, Integer.MAX_VALUE);
+                        break;
+                    case "futility":
+                        futilityMargin = marginValue(key, value);
+                        break;
+                    case "research":
+                        reductionResearch = settingValue(key, value, 0, 1) == 1;
+                        break;
+                    case "book":
+                        book = OpeningBook.open(new File(value));
+                        break;
+                    case "scores":
+                        scores = parseScores(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown engine setting: " + key);
+                }
+            }
+        }
+
+        /**
+         * Parses scoring weights of the form a:b:c:d:e:f/g:h:i:j:k:l.
+         * @param value the weights
+         * @return the weights, one row per line length
+         */
+        private static double[][] parseScores(final String value) {
+            String[] rows = value.split("/");
+            double[][] parsed = new double[rows.length][];
+
+            for (int i = 0; i < rows.length; i++) {
+                String[] weights = rows[i].split(":");
+                parsed[i] = new double[weights.length];
+
+                for (int j = 0; j < weights.length; j++) {
+                    try {
+                        parsed[i][j] = Double.parseDouble(weights[j]);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Bad scoring weights: " + value);
+                    }
+                }
+            }
+
+            if (parsed.length != SCORES.length || parsed[0].length != SCORES[0].length
+                    || parsed[1].length != SCORES[1].length) {
+                throw new IllegalArgumentException("Bad scoring weights: " + value);
+            }
+
+            return parsed;
+        }
+
+        /**
+         * Parses a futility margin, which must be a finite number of at least
+         * 0.
+         * @param name the name of the setting
+         * @param value the value as given
+         * @return the margin
+         * @throws IllegalArgumentException if the value is not a number or
+         * out of range
+         */
+        private static double marginValue(final String name, final String value) {
+            double margin;
+            try {
+                margin = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad value for " + name + ": " + value);
+            }
+
+            if (!(margin >= 0) || Double.isInfinite(margin)) {
+                throw new IllegalArgumentException("Bad value for " + name + ": " + value);
+            }
+
+            return margin;
+        }
+
+        /**
+         * Creates a search with the engine's settings.
+         * @return the search
+         */
+        Search newSearch() {
+            Search search = new Search(scores, new TranspositionTable(TABLE_ENTRIES));
+            search.setThreadCount(threads);
+            search.setOpeningBook(book);
+            search.setEndgameEmptyCells(endgameEmptyCells);
+            search.setQuiescencePlies(quiescencePlies);
+            search.setLateMoveReductions(lateMoveReductions);
+            search.setFutilityMargin(futilityMargin);
+            search.setReductionResearch(reductionResearch);
+
+            return search;
+        }
+
+        /**
+         * Searches for a move and plays it.
+         * @param search the search to use, made by newSearch
+         * @param board the board state, which receives the move
+         * @param turn the color on-move
+         */
+        void play(final Search search, final Board board, final byte turn) {
+            NodeEval eval = search.findBestMove(board, turn, maxDepth, timeBudget, nodeBudget);
+            board.move(turn, eval.loc, eval.quad, eval.rot == 1);
+        }
+    }
+
+    /**
+     * The results of the games played by one thread.
+     */
+    private static class Tally {
+        /**
+         * The number of games won by engine A.
+         */
+        private int wins;
+        /**
+         * The number of games drawn.
+         */
+        private int draws;
+        /**
+         * The number of games lost by engine A.
+         */
+        private int losses;
+        /**
+         * The number of moves searched by each engine.
+         */
+        private final long[] moves = new long[2];
+        /**
+         * The total number of nanoseconds spent searching by each engine.
+         */
+        private final long[] nanos = new long[2];
+        /**
+         * The longest time spent on one move by each engine, in nanoseconds.
+         */
+        private final long[] maxNanos = new long[2];
+        /**
+         * The total number of nodes searched by each engine.
+         */
+        private final long[] nodes = new long[2];
+
+        /**
+         * Adds another thread's results to these results.
+         * @param other the results to add
+         */
+        void add(final Tally other) {
+            wins += other.wins;
+            draws += other.draws;
+            losses += other.losses;
+
+            for (int i = 0; i < moves.length; i++) {
+                moves[i] += other.moves[i];
+                nanos[i] += other.nanos[i];
+                maxNanos[i] = Math.max(maxNanos[i], other.maxNanos[i]);
+                nodes[i] += other.nodes[i];
+            }
+        }
+
+        /**
+         * Gets the number of games played.
+         * @return the number of games
+         */
+        int games() {
+            return wins + draws + losses;
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            printUsage();
+            return;
+        }
+
+        int games;
+        int openingPlies = DEFAULT_OPENING_PLIES;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Engine[] engines;
+
+        try {
+            games = (int) settingValue("games", args[0], 1, Integer.MAX_VALUE);
+            if (args.length > 3) {
+                openingPlies = (int) settingValue("openingPlies", args[3], 0, Board.BOARD_SIZE - 1);
+            }
+            if (args.length > 4) {
+                threads = (int) settingValue("threads", args[4], 1, Integer.MAX_VALUE);
+            }
+
+            engines = new Engine[] {new Engine(args[1]), new Engine(args[2])};
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            printUsage();
+            return;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        try {
+            OpeningBook openingBook = (args.length > 5) ? OpeningBook.open(new File(args[5])) : null;
+
+            List<int[]> openings = makeOpenings((games + 1) / 2, openingPlies, openingBook, new Random());
+            Tally tally = playGames(games, engines, openings, threads);
+
+            report(engines, tally);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Prints how the tournament is run.
+     */
+    private static void printUsage() {
+        System.out.println("Usage: java state.Tournament games engineA engineB"
+                           + " [openingPlies [threads [openingBook]]]");
+    }
+
+    /**
+     * Parses a whole-number command-line value, checking its range.
+     * @param name the name of the value
+     * @param value the value as given
+     * @param min the least value allowed
+     * @param max the greatest value allowed
+     * @return the value
+     * @throws IllegalArgumentException if the value is not a number or out
+     * of range
+     */
+    private static long settingValue(final String name,
+                                     final String value,
+                                     final long min,
+                                     final long max) {
+        long parsed;
+        try {
+            parsed = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad value for " + name + ": " + value);
+        }
+
+        if (parsed < min || parsed > max) {
+            throw new IllegalArgumentException("Bad value for " + name + ": " + value);
+        }
+
+        return parsed;
+    }
+
+    /**
+     * Makes the openings from which games start, each a sequence of moves
+     * from the empty board with black moving first. Openings are made
+     * distinct up to symmetry where possible.
+     * @param count the number of openings
+     * @param plies the number of moves in each opening
+     * @param book the opening book whose positions the openings should stay
+     * among, or null to play entirely random moves
+     * @param random the source of random moves
+     * @return the openings, as packed moves
+     */
+    private static List<int[]> makeOpenings(final int count,
+                                            final int plies,
+                                            final OpeningBook book,
+                                            final Random random) {
+        List<int[]> openings = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        int attempts = 0;
+
+        while (openings.size() < count) {
+            Board board = new Board();
+            byte turn = Board.BLACK;
+            int[] moves = new int[plies];
+
+            for (int i = 0; i < plies; i++) {
+                moves[i] = randomMove(board, turn, book, random);
+                Move.play(board, turn, moves[i]);
+                turn = Board.oppositeColor(turn);
+            }
+
+            attempts++;
+            if (board.getResult() == Board.UNFINISHED
+                    && (seen.add(board.getCanonicalHash(turn))
+                        || attempts > count * OPENING_ATTEMPTS)) {
+                openings.add(moves);
+            }
+        }
+
+        return openings;
+    }
+
+    /**
+     * Picks a random move that does not finish the game, preferring moves
+     * whose resulting positions are in the opening book.
+     * @param board the board state
+     * @param turn the color on-move
+     * @param book the opening book, or null
+     * @param random the source of random moves
+     * @return the packed move
+     */
+    private static int randomMove(final Board board,
+                                  final byte turn,
+                                  final OpeningBook book,
+                                  final Random random) {
+        List<Integer> booked = new ArrayList<>();
+        List<Integer> unbooked = new ArrayList<>();
+        byte opponent = Board.oppositeColor(turn);
+
+        for (int cell = 0; cell < Board.BOARD_SIZE; cell++) {
+            if (board.getCell(cell) != Board.EMPTY) {
+                continue;
+            }
+
+            for (int rotation = 0; rotation < Move.NUM_ROTATIONS; rotation++) {
+                int move = Move.ofRotation(cell, rotation);
+
+                board.saveState();
+                Move.play(board, turn, move);
+                if (board.getResult() == Board.UNFINISHED) {
+                    if (book != null && book.lookup(board, opponent) != null) {
+                        booked.add(move);
+                    } else {
+                        unbooked.add(move);
+                    }
+                }
+                board.restoreState();
+            }
+        }
+
+        List<Integer> choices = booked.isEmpty() ? unbooked : booked;
+
+        return choices.get(random.nextInt(choices.size()));
+    }
+
+    /**
+     * Plays every game on a pool of threads. Game 2i and game 2i+1 both start
+     * from opening i, engine A playing black in the even game and white in
+     * the odd one.
+     * @param games the number of games
+     * @param engines engine A and engine B
+     * @param openings the openings
+     * @param threads the number of threads
+     * @return the results of every game
+     * @throws InterruptedException if interrupted while waiting for the games
+     */
+    private static Tally playGames(final int games,
+                                   final Engine[] engines,
+                                   final List<int[]> openings,
+                                   final int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        List<Future<Tally>> running = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            running.add(pool.submit(() -> {
+                Tally tally = new Tally();
+                Search[] searches = {engines[0].newSearch(), engines[1].newSearch()};
+
+                try {
+                    for (int i = next.getAndIncrement(); i < games; i = next.getAndIncrement()) {
+                        playGame(engines, searches, openings.get(i / 2), i % 2, tally);
+
+                        int finished = done.incrementAndGet();
+                        if (finished % REPORT_INTERVAL == 0) {
+                            System.out.println(finished + "/" + games + " games played");
+                        }
+                    }
+                } finally {
+                    searches[0].close();
+                    searches[1].close();
+                }
+
+                return tally;
+            }));
+        }
+
+        Tally total = new Tally();
+
+        try {
+            for (Future<Tally> future : running) {
+                total.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        return total;
+    }
+
+    /**
+     * Plays a single game from an opening to the end.
+     * @param engines engine A and engine B
+     * @param searches the searches of engine A and engine B
+     * @param opening the moves of the opening
+     * @param blackEngine the index of the engine that plays black
+     * @param tally the results to which the game is added
+     */
+    private static void playGame(final Engine[] engines,
+                                 final Search[] searches,
+                                 final int[] opening,
+                                 final int blackEngine,
+                                 final Tally tally) {
+        Board board = new Board();
+        byte turn = Board.BLACK;
+
+        for (int move : opening) {
+            Move.play(board, turn, move);
+            turn = Board.oppositeColor(turn);
+        }
+
+        byte colorA = (blackEngine == 0) ? Board.BLACK : Board.WHITE;
+
+        while (board.getResult() == Board.UNFINISHED) {
+            int side = (turn == colorA) ? 0 : 1;
+
+            long start = System.nanoTime();
+            engines[side].play(searches[side], board, turn);
+            long elapsed = System.nanoTime() - start;
+
+            tally.moves[side]++;
+            tally.nanos[side] += elapsed;
+            tally.maxNanos[side] = Math.max(tally.maxNanos[side], elapsed);
+            tally.nodes[side] += searches[side].getStats().getNodes();
+
+            turn = Board.oppositeColor(turn);
+        }
+
+        byte result = board.getResult();
+        if (result == Board.TIE) {
+            tally.draws++;
+        } else if (result == colorA) {
+            tally.wins++;
+        } else {
+            tally.losses++;
+        }
+    }
+
+    /**
+     * Prints the results of a tournament.
+     * @param engines engine A and engine B
+     * @param tally the results of every game
+     */
+    private static void report(final Engine[] engines, final Tally tally) {
+        int games = tally.games();
+        double score = (tally.wins + 0.5 * tally.draws) / games;
+        double variance = (tally.wins + 0.25 * tally.draws) / games - score * score;
+        double margin = Z_95 * Math.sqrt(variance / games);
+
+        System.out.println("A: " + engines[0].spec);
+        System.out.println("B: " + engines[1].spec);
+        System.out.printf(Locale.ROOT,
+                          "%d games: A won %d, drew %d, lost %d%n",
+                          games, tally.wins, tally.draws, tally.losses);
+        System.out.printf(Locale.ROOT,
+                          "A scored %.1f%% +/- %.1f%%, elo %+.0f [%+.0f, %+.0f]%n",
+                          100 * score,
+                          100 * margin,
+                          elo(score),
+                          elo(score - margin),
+                          elo(score + margin));
+
+        for (int i = 0; i < engines.length; i++) {
+            long moves = Math.max(tally.moves[i], 1);
+
+            System.out.printf(Locale.ROOT,
+                              "%s: %d moves, %.1f ms/move (max %.1f ms), %d nodes/move%n",
+                              (i == 0) ? "A" : "B",
+                              tally.moves[i],
+                              tally.nanos[i] / NANOS_PER_MILLI / moves,
+                              tally.maxNanos[i] / NANOS_PER_MILLI,
+                              tally.nodes[i] / moves);
+        }
+    }
+
+    /**
+     * Converts an expected score into an Elo rating difference.
+     * @param score the expected score, between 0 and 1
+     * @return the rating difference, infinite for a score of 0 or 1
+     */
+    private static double elo(final double score) {
+        if (score <= 0) {
+            return Double.NEGATIVE_INFINITY;
+        } else if (score >= 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        return -400 * Math.log10(1 / score - 1);
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size table of previously searched positions, indexed by the
+ * positions' Zobrist hashes. Each entry is packed into a single long along
+ * with its integer score, and stored next to a check word in a single
+ * array, so a reader can detect an entry torn by a concurrent writer and
+ * the table needs no locks.
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+public class TranspositionTable {
+    /**
+     * The bound type of an entry whose score is exact.
+     */
+    public static final int EXACT = 0;
+    /**
+     * The bound type of an entry whose score is a lower bound.
+     */
+    public static final int LOWER_BOUND = 1;
+    /**
+     * The bound type of an entry whose score is an upper bound.
+     */
+    public static final int UPPER_BOUND = 2;
+    /**
+     * The move stored for an entry without a best move.
+     */
+    public static final int NO_MOVE = 0xFFFF;
+    /**
+     * The default number of entries in a table.
+     */
+    public static final int DEFAULT_ENTRIES = 1 << 20;
+    /**
+     * The greatest magnitude of a score that can be stored.
+     */
+    public static final int MAX_SCORE = (1 << 23) - 1;
+    /**
+     * The number of longs making up an entry: the check word and the packed
+     * data.
+     */
+    private static final int ENTRY_LONGS = 2;
+    /**
+     * The number of entries sharing a hash index. The first is replaced only
+     * by searches at least as deep or from a newer search, the second always.
+     */
+    private static final int BUCKET_ENTRIES = 2;
+    /**
+     * The mask of the depth within the packed data.
+     */
+    private static final int DEPTH_MASK = 0xFF;
+    /**
+     * The position of the bound type within the packed data.
+     */
+    private static final int BOUND_SHIFT = 8;
+    /**
+     * The mask of the bound type once shifted into place.
+     */
+    private static final int BOUND_MASK = 0b11;
+    /**
+     * The position of the best move within the packed data.
+     */
+    private static final int MOVE_SHIFT = 10;
+    /**
+     * The position of the search generation within the packed data.
+     */
+    private static final int GENERATION_SHIFT = 26;
+    /**
+     * The mask of the search generation once shifted into place.
+     */
+    private static final int GENERATION_MASK = 0xFF;
+    /**
+     * The position of the score within the packed data.
+     */
+    private static final int SCORE_SHIFT = 34;
+    /**
+     * The number of bits of the score, which is stored in two's complement.
+     */
+    private static final int SCORE_BITS = 24;
+    /**
+     * The mask of the score once shifted into place.
+     */
+    private static final long SCORE_MASK = (1L << SCORE_BITS) - 1;
+    /**
+     * The flag set in the packed data of every stored entry, so that an
+     * unused entry never matches a hash of zero.
+     */
+    private static final long VALID = 1L << 63;
+
+    /**
+     * The entries of the table, ENTRY_LONGS longs each.
+     */
+    private final long[] table;
+    /**
+     * The mask applied to a hash to find its bucket.
+     */
+    private final int bucketMask;
+    /**
+     * The generation of the current search, used to age out entries left
+     * over from earlier moves.
+     */
+    private volatile int generation;
+
+    /**
+     * Constructs an empty table with a default number of entries.
+     */
+    public TranspositionTable() {
+        this(DEFAULT_ENTRIES);
+    }
+
+    /**
+     * Constructs an empty table.
+     * @param entries the number of entries in the table, rounded down to a
+     * power of two
+     */
+    public TranspositionTable(final int entries) {
+        int buckets = Integer.highestOneBit(Math.max(entries / BUCKET_ENTRIES, 1));
+
+        table = new long[buckets * BUCKET_ENTRIES * ENTRY_LONGS];
+        bucketMask = buckets - 1;
+        generation = 0;
+    }
+
+    /**
+     * Gets the number of entries in the table.
+     * @return the number of entries
+     */
+    public int getEntries() {
+        return table.length / ENTRY_LONGS;
+    }
+
+    /**
+     * Marks the start of a new search, so that entries from earlier searches
+     * are preferred for replacement. The entries themselves remain usable.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & GENERATION_MASK;
+    }
+
+    /**
+     * Removes every entry from the table.
+     */
+    public void clear() {
+        Arrays.fill(table, 0);
+    }
+
+    /**
+     * Looks up a position in the table.
+     * @param key the hash of the position
+     * @return the packed data of the entry, to be read with the static
+     * accessors, or 0 if no entry for the position was found
+     */
+    public long probe(final long key) {
+        int index = bucketIndex(key);
+
+        for (int i = 0; i < BUCKET_ENTRIES; i++) {
+            int entry = index + i * ENTRY_LONGS;
+            long check = table[entry];
+            long data = table[entry + 1];
+
+            if ((data & VALID) != 0 && (check ^ data) == key) {
+                return data;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Stores the result of a search in the table.
+     * @param key the hash of the position
+     * @param depth the depth to which the position was searched
+     * @param bound the bound type of the score
+     * @param score the score of the position, at most MAX_SCORE in magnitude
+     * @param move the best move found, or NO_MOVE
+     */
+    public void store(final long key,
+                      final int depth,
+                      final int bound,
+                      final int score,
+                      final int move) {
+        int gen = generation;
+        long data = VALID
+                  | Math.min(depth, DEPTH_MASK)
+                  | ((long) bound << BOUND_SHIFT)
+                  | ((long) (move & NO_MOVE) << MOVE_SHIFT)
+                  | ((long) gen << GENERATION_SHIFT)
+                  | ((score & SCORE_MASK) << SCORE_SHIFT);
+
+        int entry = bucketIndex(key);
+        long oldData = table[entry + 1];
+        long oldKey = table[entry] ^ oldData;
+
+        if ((oldData & VALID) != 0
+                && oldKey != key
+                && depth < depth(oldData)
+                && generation(oldData) == gen) {
+            entry += ENTRY_LONGS;
+        }
+
+        table[entry] = key ^ data;
+        table[entry + 1] = data;
+    }
+
+    /**
+     * Gets the index of the first long of the bucket for a hash.
+     * @param key the hash of the position
+     * @return the index into table of the bucket
+     */
+    private int bucketIndex(final long key) {
+        return ((int) (key ^ (key >>> 32)) & bucketMask) * BUCKET_ENTRIES * ENTRY_LONGS;
+    }
+
+    /**
+     * Gets the score of a probed entry.
+     * @param data the packed data of the entry
+     * @return the score stored in the entry
+     */
+    public static int score(final long data) {
+        return (int) (data << (Long.SIZE - SCORE_SHIFT - SCORE_BITS) >> (Long.SIZE - SCORE_BITS));
+    }
+
+    /**
+     * Gets the search depth of a probed entry.
+     * @param data the packed data of the entry
+     * @return the depth to which the position was searched
+     */
+    public static int depth(final long data) {
+        return (int) data & DEPTH_MASK;
+    }
+
+    /**
+     * Gets the bound type of a probed entry.
+     * @param data the packed data of the entry
+     * @return EXACT, LOWER_BOUND or UPPER_BOUND
+     */
+    public static int bound(final long data) {
+        return (int) (data >>> BOUND_SHIFT) & BOUND_MASK;
+    }
+
+    /**
+     * Gets the best move of a probed entry.
+     * @param data the packed data of the entry
+     * @return the best move, or NO_MOVE
+     */
+    public static int move(final long data) {
+        return (int) (data >>> MOVE_SHIFT) & NO_MOVE;
+    }
+
+    /**
+     * Gets the search generation of a probed entry.
+     * @param data the packed data of the entry
+     * @return the generation of the search that stored the entry
+     */
+    private static int generation(final long data) {
+        return (int) (data >>> GENERATION_SHIFT) & GENERATION_MASK;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The Vector API version of Board.sumDifferences, which sums the line score
+ * differences of a whole batch of evaluations a vector of lanes at a time,
+ * gathering the scores of the patterns from the line score table. This class
+ * may only be loaded when the jdk.incubator.vector module is present, so
+ * Board refers to it only once it has checked.
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+final class VectorSums {
+    /**
+     * The widest vector of ints the processor handles well.
+     */
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    /**
+     * This class only holds static methods.
+     */
+    private VectorSums() {
+    }
+
+    /**
+     * Adds to each evaluation of a batch the score differences of its
+     * changed lines, with the patterns laid out as for
+     * Board.sumDifferences.
+     * @param lineScores the score of each line pattern
+     * @param added the pattern each changed line takes on
+     * @param removed the pattern each changed line had before
+     * @param slots the number of slots
+     * @param width the number of evaluations in the batch
+     * @param sums the evaluations, to which the differences are added
+     */
+    static void sumDifferences(final int[] lineScores,
+                               final int[] added,
+                               final int[] removed,
+                               final int slots,
+                               final int width,
+                               final int[] sums) {
+        for (int i = 0; i < width; i += SPECIES.length()) {
+            VectorMask<Integer> lanes = SPECIES.indexInRange(i, width);
+            IntVector sum = IntVector.fromArray(SPECIES, sums, i, lanes);
+
+            for (int slot = 0; slot < slots; slot++) {
+                int start = slot * width + i;
+                IntVector gained = IntVector.fromArray(SPECIES, lineScores, 0, added, start, lanes);
+                IntVector lost = IntVector.fromArray(SPECIES, lineScores, 0, removed, start, lanes);
+
+                sum = sum.add(gained.sub(lost));
+            }
+
+            sum.intoArray(sums, i, lanes);
+        }
+    }
+}
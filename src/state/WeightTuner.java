@@ -0,0 +1,552 @@
+/*
+ * TCSS 435 - Summer 2019
+ * Assignment 2 - Pentago
+ * Neil Hulbert
+ */
+
+package state;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The entry-point class for fitting the scoring weights to the outcomes of
+ * played games. A corpus of positions, each labeled with the result of the
+ * game it came from, is either generated by self-play or read from a file.
+ * The weights are then fitted so that a logistic function of each
+ * position's evaluation predicts its game's result with the least mean
+ * squared error (the "Texel" method).
+ * <p>
+ * Since an evaluation is a weighted sum of streak counts, each position is
+ * reduced to its counts once, when the corpus is loaded, and every epoch
+ * works on the counts alone. Epochs split the corpus between threads, each
+ * summing the error and its gradient over its share.
+ * <p>
+ * Usage: java state.WeightTuner generate file games [threads]
+ * <br>
+ * Usage: java state.WeightTuner tune file [epochs [threads]]
+ * <p>
+ * Corpus file layout: one position per line, the 36 cells in row order as
+ * 'b', 'w' or '.', a space, then white's score in the game: 1, 0.5 or 0.
+ * A record file of positions with their game results may be tuned on too.
+ * @author Neil Hulbert
+ * @version 1.0
+ */
+public class WeightTuner {
+    /**
+     * The scoring weights from which fitting starts and with which corpus
+     * games are played.
+     */
+    private static final double[][] SCORES = PentagoMain.DEFAULT_SCORES;
+    /**
+     * The number of rows of the scoring weights, one per streak length.
+     */
+    private static final int ROWS = SCORES.length;
+    /**
+     * The number of columns of the scoring weights, one per number of filled
+     * in cells.
+     */
+    private static final int COLUMNS = SCORES[0].length;
+    /**
+     * The number of streak counts kept per position.
+     */
+    private static final int FEATURES = ROWS * COLUMNS;
+    /**
+     * The number of random plies played from the empty board before each
+     * corpus game is searched, so that the games differ.
+     */
+    private static final int OPENING_PLIES = 4;
+    /**
+     * The number of nodes searched per move of a corpus game.
+     */
+    private static final long GAME_NODE_BUDGET = 20000;
+    /**
+     * The number of epochs run unless given on the command line.
+     */
+    private static final int DEFAULT_EPOCHS = 1000;
+    /**
+     * The size of each epoch's step in every weight, before the step is
+     * adapted to the weight's gradient history.
+     */
+    private static final double LEARNING_RATE = 0.05;
+    /**
+     * The decay rate of the running mean of each weight's gradient.
+     */
+    private static final double MOMENTUM_DECAY = 0.9;
+    /**
+     * The decay rate of the running mean of each weight's squared gradient.
+     */
+    private static final double VARIANCE_DECAY = 0.999;
+    /**
+     * Keeps steps finite when a weight's gradient has always been zero.
+     */
+    private static final double STEP_EPSILON = 1e-8;
+    /**
+     * The smallest logistic scale considered.
+     */
+    private static final double MIN_SCALE = 1e-4;
+    /**
+     * The largest logistic scale considered.
+     */
+    private static final double MAX_SCALE = 10;
+    /**
+     * The number of golden section steps taken to fit the logistic scale.
+     */
+    private static final int SCALE_STEPS = 60;
+    /**
+     * The reciprocal of the golden ratio.
+     */
+    private static final double GOLDEN = (Math.sqrt(5) - 1) / 2;
+    /**
+     * The number of epochs, or games, between progress reports.
+     */
+    private static final int REPORT_INTERVAL = 100;
+
+    /**
+     * The streak counts of every position, FEATURES per position in the
+     * order of the scoring weights, row by row.
+     */
+    private final byte[] features;
+    /**
+     * White's score in the game each position came from.
+     */
+    private final float[] results;
+    /**
+     * The number of positions.
+     */
+    private final int size;
+    /**
+     * The threads among which each epoch is split.
+     */
+    private final ExecutorService pool;
+    /**
+     * The number of threads in the pool.
+     */
+    private final int threads;
+
+    /**
+     * Constructs a tuner over a loaded corpus.
+     * @param features the streak counts of every position
+     * @param results white's score in each position's game
+     * @param threads the number of threads among which to split each epoch
+     */
+    private WeightTuner(final byte[] features, final float[] results, final int threads) {
+        this.features = features;
+        this.results = results;
+        this.size = results.length;
+        this.threads = threads;
+        pool = Executors.newFixedThreadPool(threads);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 3 && !(args.length == 2 && args[0].equals("tune"))) {
+            System.out.println("Usage: java state.WeightTuner generate file games [threads]");
+            System.out.println("       java state.WeightTuner tune file [epochs [threads]]");
+            return;
+        }
+
+        File file = new File(args[1]);
+        int defaultThreads = Runtime.getRuntime().availableProcessors();
+
+        try {
+            if (args[0].equals("generate")) {
+                int games = Integer.parseInt(args[2]);
+                int threads = (args.length > 3) ? Integer.parseInt(args[3]) : defaultThreads;
+
+                generate(file, games, threads);
+            } else {
+                int epochs = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_EPOCHS;
+                int threads = (args.length > 3) ? Integer.parseInt(args[3]) : defaultThreads;
+
+                WeightTuner tuner = load(file, threads);
+                try {
+                    tuner.tune(epochs);
+                } finally {
+                    tuner.pool.shutdown();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Plays games of the search against itself and writes every unfinished
+     * position reached, labeled with its game's result, to a corpus file.
+     * @param file the corpus file to write
+     * @param games the number of games to play
+     * @param threads the number of threads on which to play them
+     * @throws FileNotFoundException if the file cannot be written
+     * @throws InterruptedException if interrupted while waiting for the games
+     */
+    private static void generate(final File file,
+                                 final int games,
+                                 final int threads) throws FileNotFoundException,
+                                                           InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        List<Future<?>> running = new ArrayList<>();
+
+        try (PrintStream out = new PrintStream(file)) {
+            for (int t = 0; t < threads; t++) {
+                running.add(pool.submit(() -> {
+                    Search search = new Search(SCORES);
+                    Random random = new Random();
+
+                    try {
+                        for (int i = next.getAndIncrement(); i < games; i = next.getAndIncrement()) {
+                            String positions = playGame(search, random);
+
+                            synchronized (out) {
+                                out.print(positions);
+                            }
+
+                            int finished = done.incrementAndGet();
+                            if (finished % REPORT_INTERVAL == 0) {
+                                System.out.println(finished + "/" + games + " games played");
+                            }
+                        }
+                    } finally {
+                        search.close();
+                    }
+                }));
+            }
+
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Plays a single corpus game from a random opening.
+     * @param search the search that plays both sides
+     * @param random the source of the opening's moves
+     * @return the corpus lines of the game's unfinished positions
+     */
+    private static String playGame(final Search search, final Random random) {
+        Board board = new Board();
+        byte turn = Board.BLACK;
+        List<String> positions = new ArrayList<>();
+
+        for (int ply = 0; board.getResult() == Board.UNFINISHED; ply++) {
+            if (ply < OPENING_PLIES) {
+                int cell;
+                do {
+                    cell = random.nextInt(Board.BOARD_SIZE);
+                } while (board.getCell(cell) != Board.EMPTY);
+
+                Move.play(board, turn, Move.ofRotation(cell, random.nextInt(Move.NUM_ROTATIONS)));
+            } else {
+                positions.add(board.toCells());
+
+                NodeEval eval = search.findBestMove(board, turn, Board.BOARD_SIZE, 0, GAME_NODE_BUDGET);
+                board.move(turn, eval.loc, eval.quad, eval.rot == 1);
+            }
+
+            turn = Board.oppositeColor(turn);
+        }
+
+        byte result = board.getResult();
+        String score = (result == Board.WHITE) ? "1" : (result == Board.BLACK) ? "0" : "0.5";
+        StringBuilder lines = new StringBuilder();
+
+        for (String position : positions) {
+            lines.append(position).append(' ').append(score).append('\n');
+        }
+
+        return lines.toString();
+    }
+
+    /**
+     * Reads a corpus file, reducing each position to its streak counts. The
+     * file is either a text corpus or a record file of positions whose game
+     * results are known. Finished positions are skipped, since their
+     * evaluations are not sums of weights.
+     * @param file the corpus file
+     * @param threads the number of threads among which to split each epoch
+     * @return the tuner over the corpus
+     * @throws IOException if the file cannot be read, is malformed or has no
+     * unfinished positions
+     */
+    private static WeightTuner load(final File file, final int threads) throws IOException {
+        List<byte[]> featureList = new ArrayList<>();
+        List<Float> resultList = new ArrayList<>();
+        Board board = new Board();
+
+        if (RecordReader.isRecordFile(file)) {
+            try (RecordReader in = new RecordReader(file)) {
+                PositionRecord record = new PositionRecord();
+
+                while (in.read(record)) {
+                    byte result = record.getResult();
+
+                    if (result != Board.UNFINISHED) {
+                        record.getPosition(board);
+                        float score = (result == Board.WHITE) ? 1 : (result == Board.BLACK) ? 0 : 0.5f;
+                        addPosition(board, score, featureList, resultList);
+                    }
+                }
+            }
+        } else {
+            try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+                for (String line = in.readLine(); line != null; line = in.readLine()) {
+                    if (line.length() <= Board.BOARD_SIZE || line.charAt(Board.BOARD_SIZE) != ' '
+                            || !board.setCells(line.substring(0, Board.BOARD_SIZE))) {
+                        throw new IOException("Malformed corpus line: " + line);
+                    }
+
+                    addPosition(board,
+                                Float.parseFloat(line.substring(Board.BOARD_SIZE + 1).trim()),
+                                featureList,
+                                resultList);
+                }
+            }
+        }
+
+        if (resultList.isEmpty()) {
+            throw new IOException("No unfinished positions in corpus: " + file);
+        }
+
+        byte[] features = new byte[featureList.size() * FEATURES];
+        float[] results = new float[resultList.size()];
+
+        for (int i = 0; i < results.length; i++) {
+            System.arraycopy(featureList.get(i), 0, features, i * FEATURES, FEATURES);
+            results[i] = resultList.get(i);
+        }
+
+        System.out.println(results.length + " positions loaded");
+
+        return new WeightTuner(features, results, threads);
+    }
+
+    /**
+     * Reduces a position to its streak counts and adds it to the corpus,
+     * unless the game is already over.
+     * @param board the board state
+     * @param result white's score in the position's game
+     * @param featureList the list to receive the streak counts
+     * @param resultList the list to receive the result
+     */
+    private static void addPosition(final Board board,
+                                    final float result,
+                                    final List<byte[]> featureList,
+                                    final List<Float> resultList) {
+        if (board.getResult() != Board.UNFINISHED) {
+            return;
+        }
+
+        int[][] counts = new int[ROWS][COLUMNS];
+        board.addStreakCounts(counts);
+
+        byte[] packed = new byte[FEATURES];
+        for (int i = 0; i < FEATURES; i++) {
+            packed[i] = (byte) counts[i / COLUMNS][i % COLUMNS];
+        }
+
+        featureList.add(packed);
+        resultList.add(result);
+    }
+
+    /**
+     * Fits the logistic scale to the starting weights, then fits the weights
+     * by gradient descent with per-weight adaptive steps, and prints them.
+     * @param epochs the number of gradient steps
+     * @throws InterruptedException if interrupted while waiting for an epoch
+     */
+    private void tune(final int epochs) throws InterruptedException {
+        double[] weights = new double[FEATURES];
+        for (int i = 0; i < FEATURES; i++) {
+            weights[i] = SCORES[i / COLUMNS][i % COLUMNS];
+        }
+
+        double scale = fitScale(weights);
+        double[] gradient = new double[FEATURES];
+        double[] momentum = new double[FEATURES];
+        double[] variance = new double[FEATURES];
+
+        System.out.printf(Locale.ROOT, "scale %.6f, starting error %.6f%n", scale, error(weights, scale, null));
+
+        for (int epoch = 1; epoch <= epochs; epoch++) {
+            double error = error(weights, scale, gradient);
+
+            for (int i = 0; i < FEATURES; i++) {
+                momentum[i] = MOMENTUM_DECAY * momentum[i] + (1 - MOMENTUM_DECAY) * gradient[i];
+                variance[i] = VARIANCE_DECAY * variance[i]
+                              + (1 - VARIANCE_DECAY) * gradient[i] * gradient[i];
+
+                double meanGradient = momentum[i] / (1 - Math.pow(MOMENTUM_DECAY, epoch));
+                double meanSquare = variance[i] / (1 - Math.pow(VARIANCE_DECAY, epoch));
+                weights[i] -= LEARNING_RATE * meanGradient / (Math.sqrt(meanSquare) + STEP_EPSILON);
+            }
+
+            if (epoch % REPORT_INTERVAL == 0) {
+                System.out.printf(Locale.ROOT, "epoch %d, error %.6f%n", epoch, error);
+            }
+        }
+
+        System.out.printf(Locale.ROOT, "final error %.6f%n", error(weights, scale, null));
+        printWeights(weights);
+    }
+
+    /**
+     * Finds the logistic scale that best predicts the results with the given
+     * weights, by golden section search over its logarithm.
+     * @param weights the scoring weights, row by row
+     * @return the scale
+     * @throws InterruptedException if interrupted while waiting for an epoch
+     */
+    private double fitScale(final double[] weights) throws InterruptedException {
+        double low = Math.log(MIN_SCALE);
+        double high = Math.log(MAX_SCALE);
+
+        for (int step = 0; step < SCALE_STEPS; step++) {
+            double left = high - GOLDEN * (high - low);
+            double right = low + GOLDEN * (high - low);
+
+            if (error(weights, Math.exp(left), null) < error(weights, Math.exp(right), null)) {
+                high = right;
+            } else {
+                low = left;
+            }
+        }
+
+        return Math.exp((low + high) / 2);
+    }
+
+    /**
+     * Computes the mean squared error of the predicted results over the
+     * corpus, and optionally its gradient with respect to the weights, with
+     * the corpus split between the threads.
+     * @param weights the scoring weights, row by row
+     * @param scale the logistic scale applied to each evaluation
+     * @param gradient the array to receive the gradient, or null
+     * @return the mean squared error
+     * @throws InterruptedException if interrupted while waiting for a thread
+     */
+    private double error(final double[] weights,
+                         final double scale,
+                         final double[] gradient) throws InterruptedException {
+        List<Future<double[]>> running = new ArrayList<>();
+        int share = (size + threads - 1) / threads;
+
+        for (int t = 0; t < threads; t++) {
+            int from = Math.min(t * share, size);
+            int to = Math.min(from + share, size);
+
+            running.add(pool.submit(() -> partialError(weights, scale, gradient != null, from, to)));
+        }
+
+        double[] total = new double[FEATURES + 1];
+
+        try {
+            for (Future<double[]> future : running) {
+                double[] partial = future.get();
+
+                for (int i = 0; i < total.length; i++) {
+                    total[i] += partial[i];
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+
+        if (gradient != null) {
+            for (int i = 0; i < FEATURES; i++) {
+                gradient[i] = total[i + 1] / size;
+            }
+        }
+
+        return total[0] / size;
+    }
+
+    /**
+     * Sums the squared error and its gradient over part of the corpus.
+     * @param weights the scoring weights, row by row
+     * @param scale the logistic scale applied to each evaluation
+     * @param withGradient whether to sum the gradient
+     * @param from the first position summed
+     * @param to one past the last position summed
+     * @return the summed squared error followed by the summed gradient
+     */
+    private double[] partialError(final double[] weights,
+                                  final double scale,
+                                  final boolean withGradient,
+                                  final int from,
+                                  final int to) {
+        double[] sums = new double[FEATURES + 1];
+
+        for (int p = from; p < to; p++) {
+            int base = p * FEATURES;
+            double eval = 0;
+
+            for (int i = 0; i < FEATURES; i++) {
+                eval += features[base + i] * weights[i];
+            }
+
+            double predicted = 1 / (1 + Math.exp(-scale * eval));
+            double diff = predicted - results[p];
+            sums[0] += diff * diff;
+
+            if (withGradient) {
+                double slope = 2 * diff * predicted * (1 - predicted) * scale;
+
+                for (int i = 0; i < FEATURES; i++) {
+                    sums[i + 1] += slope * features[base + i];
+                }
+            }
+        }
+
+        return sums;
+    }
+
+    /**
+     * Prints fitted weights both as a Java array initializer, for use as a
+     * Search's streakScores, and as a Tournament engine setting.
+     * @param weights the scoring weights, row by row
+     */
+    private static void printWeights(final double[] weights) {
+        StringBuilder literal = new StringBuilder("{");
+        StringBuilder setting = new StringBuilder("scores=");
+
+        for (int row = 0; row < ROWS; row++) {
+            literal.append((row == 0) ? "{" : ",\n {");
+            if (row > 0) {
+                setting.append('/');
+            }
+
+            for (int col = 0; col < COLUMNS; col++) {
+                String weight = String.format(Locale.ROOT, "%.4f", weights[row * COLUMNS + col]);
+
+                literal.append((col == 0) ? "" : ",").append(weight);
+                setting.append((col == 0) ? "" : ":").append(weight);
+            }
+
+            literal.append('}');
+        }
+
+        System.out.println(literal.append('}'));
+        System.out.println(setting);
+    }
+}